@@ -0,0 +1,61 @@
+package com.fima.chartview;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Reducing a series to what can be seen in a chart of a typical phone width
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecimationBenchmark {
+	private static final int WIDTH = 1080;
+
+	@Param({ "1000", "100000", "1000000" })
+	int mSize;
+
+	private PointStore mStore;
+	private final Decimator mDecimator = new Decimator();
+	private double mScaleX;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		mStore = new PointStore(mSize, false);
+		double y = 0;
+		for (int i = 0; i < mSize; i++) {
+			y += random.nextGaussian();
+			mStore.add(i, y);
+		}
+		mScaleX = (double) WIDTH / mSize;
+		mStore.getPyramid();
+	}
+
+	@Benchmark
+	public int minMax() {
+		mDecimator.minMax(mStore, 0, mSize - 1, 0, mScaleX);
+		return mDecimator.size();
+	}
+
+	@Benchmark
+	public int largestTriangleThreeBuckets() {
+		mDecimator.largestTriangleThreeBuckets(mStore, 0, mSize - 1, 2 * WIDTH);
+		return mDecimator.size();
+	}
+
+	// Collect from the pyramid, which only has anything to offer once there are dozens of points to a pixel
+	@Benchmark
+	public int pyramidCollect() {
+		final PointPyramid pyramid = mStore.getPyramid();
+		pyramid.collect(mStore, 0, mSize - 1, (double) mSize / WIDTH);
+		return pyramid.size();
+	}
+}
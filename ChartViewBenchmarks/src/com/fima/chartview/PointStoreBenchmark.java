@@ -0,0 +1,92 @@
+package com.fima.chartview;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Storing points: appending, evicting from a full ring, bulk loading, and the Y range tracking which keeps the
+// chart's bounds up to date
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PointStoreBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	int mSize;
+
+	private double[] mXs;
+	private double[] mYs;
+	private double[] mShuffledXs;
+
+	// A full ring, and the X value for the next point appended to it
+	private PointStore mRing;
+	private double mNextX;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		mXs = new double[mSize];
+		mYs = new double[mSize];
+		for (int i = 0; i < mSize; i++) {
+			mXs[i] = i;
+			mYs[i] = random.nextGaussian();
+		}
+
+		mShuffledXs = mXs.clone();
+		for (int i = mSize - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final double x = mShuffledXs[i];
+			mShuffledXs[i] = mShuffledXs[j];
+			mShuffledXs[j] = x;
+		}
+
+		mRing = new PointStore(mSize, true);
+		mRing.set(mXs, mYs, 0, mSize);
+		mNextX = mSize;
+	}
+
+	// Add every point in X order to a store which grows as needed
+	@Benchmark
+	public PointStore append() {
+		final PointStore store = new PointStore();
+		for (int i = 0; i < mSize; i++)
+			store.add(mXs[i], mYs[i]);
+		return store;
+	}
+
+	// Add a point to a full fixed-capacity store, evicting the first, as AbstractSeries does for live data
+	@Benchmark
+	public double appendEvicting() {
+		if (mRing.isFull()) mRing.removeFirst();
+		final double y = mYs[(int) (mNextX % mSize)];
+		mRing.add(mNextX++, y);
+		return mRing.getMaxY();
+	}
+
+	@Benchmark
+	public PointStore setSorted() {
+		final PointStore store = new PointStore();
+		store.set(mXs, mYs, 0, mSize);
+		return store;
+	}
+
+	@Benchmark
+	public PointStore setUnsorted() {
+		final PointStore store = new PointStore();
+		store.set(mShuffledXs, mYs, 0, mSize);
+		return store;
+	}
+
+	// Look up the visible range of a store, as the chart does each frame
+	@Benchmark
+	public int visibleRange() {
+		return mRing.floorIndex(mNextX - mSize / 4) - mRing.ceilingIndex(mNextX - mSize / 2);
+	}
+}
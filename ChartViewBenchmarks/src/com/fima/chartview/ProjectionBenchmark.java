@@ -0,0 +1,39 @@
+package com.fima.chartview;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Projecting every point of a series into line segments, as LinearSeries does without decimation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProjectionBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	int mSize;
+
+	private PointStore mStore;
+	private final LineProjector mProjector = new LineProjector();
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		mStore = new PointStore(mSize, true);
+		for (int i = 0; i < mSize; i++)
+			mStore.add(i, random.nextGaussian());
+	}
+
+	@Benchmark
+	public int project() {
+		mProjector.project(mStore, 0, mSize - 1, 0, 1920, 0, -4, 1080f / mSize, 240f);
+		return mProjector.getLineCount();
+	}
+}
@@ -0,0 +1,29 @@
+package com.fima.chartview;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Working out where grid lines go, which happens whenever the chart's bounds change
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TicksBenchmark {
+	private double mMin = -12.5;
+	private double mMax = 1234.5;
+
+	@Benchmark
+	public double[] evenlySpaced() {
+		return Ticks.evenlySpaced(5, mMin, mMax);
+	}
+
+	@Benchmark
+	public double firstMultiple() {
+		return Ticks.firstMultiple(mMin, 100);
+	}
+}
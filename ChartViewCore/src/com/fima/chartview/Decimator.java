@@ -0,0 +1,161 @@
+package com.fima.chartview;
+
+// Reduces a run of stored points to a smaller set which draws (almost) the same line. The result is kept in reusable
+// columns so that decimating every frame doesn't allocate once the buffers have grown to fit.
+final class Decimator implements PointColumns {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private double[] mXs = new double[0];
+	private double[] mYs = new double[0];
+	private int mSize;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	@Override
+	public double getX(int index) {
+		return mXs[index];
+	}
+
+	@Override
+	public double getY(int index) {
+		return mYs[index];
+	}
+
+	// Keep the first, lowest, highest and last point of every pixel column, in x order. Since each column is drawn as a
+	// vertical run between its extremes anyway, the line looks identical to drawing every point.
+	void minMax(PointColumns points, int first, int last, double originX, double scaleX) {
+		mSize = 0;
+		if (last < first) return;
+
+		int column = column(points.getX(first), originX, scaleX);
+		int firstIndex = first;
+		int minIndex = first;
+		int maxIndex = first;
+
+		for (int i = first + 1; i <= last; i++) {
+			final int pointColumn = column(points.getX(i), originX, scaleX);
+			if (pointColumn != column) {
+				appendColumn(points, firstIndex, minIndex, maxIndex, i - 1);
+				column = pointColumn;
+				firstIndex = minIndex = maxIndex = i;
+				continue;
+			}
+
+			final double y = points.getY(i);
+			if (y < points.getY(minIndex)) minIndex = i;
+			if (y > points.getY(maxIndex)) maxIndex = i;
+		}
+		appendColumn(points, firstIndex, minIndex, maxIndex, last);
+	}
+
+	// Largest-triangle-three-buckets: split the points into (threshold - 2) buckets and keep the point from each which
+	// makes the largest triangle with the point kept from the previous bucket and the average of the next one. The
+	// first and last points are always kept.
+	void largestTriangleThreeBuckets(PointColumns points, int first, int last, int threshold) {
+		mSize = 0;
+		final int count = last - first + 1;
+		if (count <= 0) return;
+
+		if (threshold < 3 || count <= threshold) {
+			ensureCapacity(count);
+			for (int i = first; i <= last; i++)
+				append(points.getX(i), points.getY(i));
+			return;
+		}
+
+		ensureCapacity(threshold);
+		final double bucketSize = (double) (count - 2) / (threshold - 2);
+
+		int selected = first;
+		append(points.getX(selected), points.getY(selected));
+
+		for (int bucket = 0; bucket < threshold - 2; bucket++) {
+			// Average of the next bucket (or just the last point, for the final bucket)
+			final int nextStart = first + 1 + (int) ((bucket + 1) * bucketSize);
+			final int nextEnd = Math.min(first + 1 + (int) ((bucket + 2) * bucketSize), last + 1);
+			double averageX = 0;
+			double averageY = 0;
+			for (int i = nextStart; i < nextEnd; i++) {
+				averageX += points.getX(i);
+				averageY += points.getY(i);
+			}
+			final int nextCount = nextEnd - nextStart;
+			if (nextCount > 0) {
+				averageX /= nextCount;
+				averageY /= nextCount;
+			} else {
+				averageX = points.getX(last);
+				averageY = points.getY(last);
+			}
+
+			// Point in this bucket making the largest triangle
+			final int start = first + 1 + (int) (bucket * bucketSize);
+			final int end = Math.min(nextStart, last);
+			final double selectedX = points.getX(selected);
+			final double selectedY = points.getY(selected);
+			double maxArea = -1;
+			int maxIndex = start;
+			for (int i = start; i < end; i++) {
+				final double area = Math.abs((selectedX - averageX) * (points.getY(i) - selectedY)
+						- (selectedX - points.getX(i)) * (averageY - selectedY));
+				if (area > maxArea) {
+					maxArea = area;
+					maxIndex = i;
+				}
+			}
+
+			selected = maxIndex;
+			append(points.getX(selected), points.getY(selected));
+		}
+
+		append(points.getX(last), points.getY(last));
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static int column(double x, double originX, double scaleX) {
+		return (int) Math.floor((x - originX) * scaleX);
+	}
+
+	// Append the distinct indices of a pixel column in the order they appear in the series
+	private void appendColumn(PointColumns points, int firstIndex, int minIndex, int maxIndex, int lastIndex) {
+		ensureCapacity(mSize + 4);
+
+		final int low = Math.min(minIndex, maxIndex);
+		final int high = Math.max(minIndex, maxIndex);
+
+		append(points.getX(firstIndex), points.getY(firstIndex));
+		if (low != firstIndex) append(points.getX(low), points.getY(low));
+		if (high != low && high != lastIndex) append(points.getX(high), points.getY(high));
+		if (lastIndex != firstIndex && lastIndex != low) append(points.getX(lastIndex), points.getY(lastIndex));
+	}
+
+	private void append(double x, double y) {
+		mXs[mSize] = x;
+		mYs[mSize] = y;
+		mSize++;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= mXs.length) return;
+
+		final int newCapacity = Math.max(capacity, mXs.length + (mXs.length >> 1));
+		final double[] xs = new double[newCapacity];
+		final double[] ys = new double[newCapacity];
+		System.arraycopy(mXs, 0, xs, 0, mSize);
+		System.arraycopy(mYs, 0, ys, 0, mSize);
+		mXs = xs;
+		mYs = ys;
+	}
+}
@@ -0,0 +1,107 @@
+package com.fima.chartview;
+
+// Projects a run of points into screen co-ordinates as line segments, ready to be drawn with a single
+// Canvas.drawLines call. The segment buffer is reused, so projecting every frame doesn't allocate once it's grown to fit.
+final class LineProjector {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Line segments as (x0, y0, x1, y1) quads
+	private float[] mLines = new float[0];
+	private int mLineCount;
+
+	// A lone point has no segments, so it's drawn as a dot instead
+	private boolean mHasDot;
+	private float mDotX;
+	private float mDotY;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Project the points from first to last. (left, bottom) is the drawing co-ordinate of the value (originX, originY),
+	// and the scales convert distances in value to distances in drawing co-ordinates.
+	void project(PointColumns points, int first, int last, float left, float bottom, double originX, double originY,
+			float scaleX, float scaleY) {
+		if (begin(points, first, last, left, bottom, originX, originY, scaleX, scaleY) > 0)
+			projectSegments(points, first, last, left, bottom, originX, originY, scaleX, scaleY, mLines, 0);
+	}
+
+	// The first half of project: size the segment buffer for the points from first to last, or project a lone point as
+	// the dot. Returns the number of segments, which the caller fills in with projectSegments (perhaps a run at a time,
+	// on several threads), segment i of the whole run going at offset 4 * i of getLines().
+	int begin(PointColumns points, int first, int last, float left, float bottom, double originX, double originY,
+			float scaleX, float scaleY) {
+		mLineCount = 0;
+		mHasDot = false;
+		if (last < first) return 0;
+
+		if (first == last) {
+			mHasDot = true;
+			mDotX = projectX(points.getX(first), left, originX, scaleX);
+			mDotY = projectY(points.getY(first), bottom, originY, scaleY);
+			return 0;
+		}
+
+		final int count = 4 * (last - first);
+		if (mLines.length < count)
+			mLines = new float[count];
+
+		mLineCount = count;
+		return last - first;
+	}
+
+	float[] getLines() {
+		return mLines;
+	}
+
+	// Number of floats in getLines() which make up segments (four per segment)
+	int getLineCount() {
+		return mLineCount;
+	}
+
+	boolean hasDot() {
+		return mHasDot;
+	}
+
+	float getDotX() {
+		return mDotX;
+	}
+
+	float getDotY() {
+		return mDotY;
+	}
+
+	// Write the segments joining the points from first to last into lines, starting at offset: 4 * (last - first)
+	// floats in all. Each point is projected on its own, so any run of points can be projected separately and give
+	// exactly the same floats.
+	static void projectSegments(PointColumns points, int first, int last, float left, float bottom, double originX,
+			double originY, float scaleX, float scaleY, float[] lines, int offset) {
+		float lastX = projectX(points.getX(first), left, originX, scaleX);
+		float lastY = projectY(points.getY(first), bottom, originY, scaleY);
+
+		int j = offset;
+		for (int i = first + 1; i <= last; i++) {
+			final float x = projectX(points.getX(i), left, originX, scaleX);
+			final float y = projectY(points.getY(i), bottom, originY, scaleY);
+
+			lines[j++] = lastX;
+			lines[j++] = lastY;
+			lines[j++] = x;
+			lines[j++] = y;
+
+			lastX = x;
+			lastY = y;
+		}
+	}
+
+	static float projectX(double x, float left, double originX, float scaleX) {
+		return (float) (left + (scaleX * (x - originX)));
+	}
+
+	// Screen y-co-ordinates run downwards, so higher values are drawn further up from the bottom
+	static float projectY(double y, float bottom, double originY, float scaleY) {
+		return (float) (bottom - (scaleY * (y - originY)));
+	}
+}
@@ -0,0 +1,166 @@
+package com.fima.chartview;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// A read-only store over a PointFile, with each column memory-mapped rather than read onto the heap. The OS pages the
+// file in as points are read, so the store costs a few objects however many points the file holds, and drawing a
+// window of the points only touches the pages covering that window (plus a binary search's worth to find it). The
+// range comes from the file's header, so opening the file doesn't read the columns at all.
+final class MappedPointStore implements SeriesStore {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final DoubleBuffer mXs;
+	private final DoubleBuffer mYs;
+	private final int mSize;
+	private final double mMinY;
+	private final double mMaxY;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	MappedPointStore(File file) throws IOException {
+		final RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = input.getChannel();
+			if (channel.size() < PointFile.HEADER_SIZE) throw new IOException("Not a point file: " + file);
+
+			final MappedByteBuffer header = map(channel, 0, PointFile.HEADER_SIZE);
+			mSize = PointFile.readCount(header);
+			if (channel.size() < PointFile.columnOffset(mSize, true) + 8L * mSize)
+				throw new IOException("Point file is truncated: " + file);
+
+			mMinY = header.getDouble(PointFile.MIN_Y_OFFSET);
+			mMaxY = header.getDouble(PointFile.MAX_Y_OFFSET);
+
+			// Mappings stay valid once the file is closed
+			mXs = map(channel, PointFile.columnOffset(mSize, false), 8L * mSize).asDoubleBuffer();
+			mYs = map(channel, PointFile.columnOffset(mSize, true), 8L * mSize).asDoubleBuffer();
+		} finally {
+			input.close();
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	@Override
+	public double getX(int index) {
+		return mXs.get(index);
+	}
+
+	@Override
+	public double getY(int index) {
+		return mYs.get(index);
+	}
+
+	@Override
+	public int getCapacity() {
+		return -1;
+	}
+
+	@Override
+	public boolean isFull() {
+		return false;
+	}
+
+	@Override
+	public long getFirstSequence() {
+		return 0;
+	}
+
+	// Building a pyramid would read every page and put the aggregates on the heap, which is what mapping avoids
+	@Override
+	public PointPyramid getPyramid() {
+		return null;
+	}
+
+	@Override
+	public double getMinY() {
+		return mMinY;
+	}
+
+	@Override
+	public double getMaxY() {
+		return mMaxY;
+	}
+
+	@Override
+	public int indexOf(double x) {
+		int low = 0;
+		int high = mSize - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final double midX = mXs.get(mid);
+			if (midX < x) low = mid + 1;
+			else if (midX > x) high = mid - 1;
+			else return mid;
+		}
+		return -(low + 1);
+	}
+
+	@Override
+	public int ceilingIndex(double x) {
+		final int index = indexOf(x);
+		return index >= 0 ? index : -(index + 1);
+	}
+
+	@Override
+	public int floorIndex(double x) {
+		final int index = indexOf(x);
+		return index >= 0 ? index : -(index + 1) - 1;
+	}
+
+	@Override
+	public boolean add(double x, double y) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean remove(double x) {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeFirst() {
+		throw readOnly();
+	}
+
+	@Override
+	public void clear() {
+		throw readOnly();
+	}
+
+	@Override
+	public void set(double[] xs, double[] ys, int offset, int length) {
+		throw readOnly();
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("A mapped series can't be changed");
+	}
+}
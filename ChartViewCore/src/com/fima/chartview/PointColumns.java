@@ -0,0 +1,10 @@
+package com.fima.chartview;
+
+// Read access to points held as x/y columns, sorted by x
+interface PointColumns {
+	int size();
+
+	double getX(int index);
+
+	double getY(int index);
+}
@@ -0,0 +1,188 @@
+package com.fima.chartview;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+// The format points are saved in, both for MappedPointStore and for snapshots of a series: a header, then every X
+// value, then every Y value, as little-endian doubles.
+// The header holds the point count and the X and Y ranges, so a reader can draw a window of the points without
+// touching the rest of the file:
+//
+//   0  int    MAGIC
+//   4  int    VERSION
+//   8  long   point count
+//   16 double lowest X, 24 highest X, 32 lowest Y, 40 highest Y
+//   48 reserved, zero until HEADER_SIZE (which keeps the columns 8-byte aligned)
+//
+// X values are strictly increasing. The header is written last, so a file that wasn't finished doesn't open.
+final class PointFile {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	static final int MAGIC = 0x54505643; // "CVPT" in little-endian order
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+
+	static final int COUNT_OFFSET = 8;
+	static final int MIN_X_OFFSET = 16;
+	static final int MAX_X_OFFSET = 24;
+	static final int MIN_Y_OFFSET = 32;
+	static final int MAX_Y_OFFSET = 40;
+
+	// A column is mapped as one buffer, so it has to fit in an int's worth of bytes
+	static final long MAX_POINTS = Integer.MAX_VALUE / 8;
+
+	// Points are written in chunks of this many through one direct buffer
+	private static final int CHUNK_SIZE = 8192;
+
+	private PointFile() {
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Write count points, starting at first, to a new file (replacing any that's there). Throws
+	// IllegalArgumentException if the X values aren't strictly increasing.
+	static void write(File file, PointColumns points, int first, int count) throws IOException {
+		final RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			output.setLength(0);
+			write(output.getChannel(), points, first, count);
+		} finally {
+			output.close();
+		}
+	}
+
+	static void write(FileChannel channel, PointColumns points, int first, int count) throws IOException {
+		if (first < 0 || count < 0 || first + count > points.size())
+			throw new IndexOutOfBoundsException("first " + first + ", count " + count);
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE * 8).order(ByteOrder.LITTLE_ENDIAN);
+		final DoubleBuffer doubles = buffer.asDoubleBuffer();
+		final double[] chunk = new double[CHUNK_SIZE];
+
+		// Leave room for the header, which can only be filled in at the end
+		channel.position(HEADER_SIZE);
+
+		double lastX = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i += CHUNK_SIZE) {
+			final int length = Math.min(CHUNK_SIZE, count - i);
+			for (int j = 0; j < length; j++) {
+				final double x = points.getX(first + i + j);
+				if (!(x > lastX)) throw new IllegalArgumentException("X values must be strictly increasing, at " + (i + j));
+				chunk[j] = lastX = x;
+			}
+			writeChunk(channel, buffer, doubles, chunk, length);
+		}
+
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i += CHUNK_SIZE) {
+			final int length = Math.min(CHUNK_SIZE, count - i);
+			for (int j = 0; j < length; j++) {
+				final double y = points.getY(first + i + j);
+				if (y < minY) minY = y;
+				if (y > maxY) maxY = y;
+				chunk[j] = y;
+			}
+			writeChunk(channel, buffer, doubles, chunk, length);
+		}
+
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putLong(COUNT_OFFSET, count);
+		header.putDouble(MIN_X_OFFSET, count > 0 ? points.getX(first) : Double.NaN);
+		header.putDouble(MAX_X_OFFSET, count > 0 ? points.getX(first + count - 1) : Double.NaN);
+		header.putDouble(MIN_Y_OFFSET, count > 0 ? minY : Double.NaN);
+		header.putDouble(MAX_Y_OFFSET, count > 0 ? maxY : Double.NaN);
+		channel.position(0);
+		writeFully(channel, header);
+	}
+
+	// Replace the contents of a store with the points in a file, read a chunk at a time. The points are already sorted
+	// and the header has their range, so the store takes them as they are. A fixed-capacity store keeps the points with
+	// the highest X values, and works out the range of those for itself.
+	static void read(FileChannel channel, PointStore store) throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, header, 0);
+		final int count = readCount(header);
+
+		final int capacity = store.getCapacity();
+		final int length = capacity >= 0 ? Math.min(count, capacity) : count;
+		final int skipped = count - length;
+
+		final double[] xs = new double[capacity >= 0 ? capacity : Math.max(length, 1)];
+		final double[] ys = new double[xs.length];
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE * 8).order(ByteOrder.LITTLE_ENDIAN);
+		readColumn(channel, columnOffset(count, false) + 8L * skipped, buffer, xs, length);
+		readColumn(channel, columnOffset(count, true) + 8L * skipped, buffer, ys, length);
+
+		if (skipped == 0) store.adopt(xs, ys, length, header.getDouble(MIN_Y_OFFSET), header.getDouble(MAX_Y_OFFSET));
+		else store.adopt(xs, ys, length, Double.NaN, Double.NaN);
+	}
+
+	// Check the header at the start of buffer (in little-endian order) and return the number of points in the file
+	static int readCount(ByteBuffer header) throws IOException {
+		if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC)
+			throw new IOException("Not a point file");
+		if (header.getInt(4) != VERSION)
+			throw new IOException("Unsupported point file version " + header.getInt(4));
+
+		final long count = header.getLong(COUNT_OFFSET);
+		if (count < 0 || count > MAX_POINTS) throw new IOException("Bad point count " + count);
+		return (int) count;
+	}
+
+	// The file offset of the X or Y column of a file of count points
+	static long columnOffset(int count, boolean y) {
+		return HEADER_SIZE + (y ? 8L * count : 0);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static void writeChunk(FileChannel channel, ByteBuffer buffer, DoubleBuffer doubles, double[] chunk,
+			int length) throws IOException {
+		doubles.clear();
+		doubles.put(chunk, 0, length);
+		buffer.clear();
+		buffer.limit(length * 8);
+		writeFully(channel, buffer);
+	}
+
+	// Read length doubles from the channel at position into values
+	private static void readColumn(FileChannel channel, long position, ByteBuffer buffer, double[] values, int length)
+			throws IOException {
+		for (int i = 0; i < length; i += CHUNK_SIZE) {
+			final int chunk = Math.min(CHUNK_SIZE, length - i);
+			buffer.clear();
+			buffer.limit(chunk * 8);
+			readFully(channel, buffer, position + 8L * i);
+			buffer.flip();
+			buffer.asDoubleBuffer().get(values, i, chunk);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position);
+			if (read < 0) throw new EOFException("Point file is truncated");
+			position += read;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
@@ -0,0 +1,277 @@
+package com.fima.chartview;
+
+// A multi-resolution index over a PointStore. Each level splits the points into buckets of a power-of-two size (by
+// sequence number, so appends and evictions don't move existing buckets) and keeps the first, lowest, highest and last
+// point of each one. Those four points are all a pixel column needs, so a zoomed-out chart can be drawn from a few
+// buckets per pixel rather than every point.
+//
+// Appending a point updates one bucket per level. Buckets whose points have been evicted from the front of the store
+// are left in place until a good chunk of them can be dropped at once, and are never used for drawing.
+final class PointPyramid implements PointColumns {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// The smallest buckets hold 16 points, which keeps the whole pyramid to about one double per point
+	private static final int MIN_SHIFT = 4;
+
+	private Level[] mLevels = new Level[0];
+	private long mNextSequence;
+
+	// Points collected for drawing
+	private double[] mXs = new double[0];
+	private double[] mYs = new double[0];
+	private int mSize;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Build a pyramid over everything in the store
+	PointPyramid(PointStore store) {
+		mNextSequence = store.getFirstSequence();
+		final int size = store.size();
+		for (int i = 0; i < size; i++)
+			append(store.getX(i), store.getY(i));
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	@Override
+	public double getX(int index) {
+		return mXs[index];
+	}
+
+	@Override
+	public double getY(int index) {
+		return mYs[index];
+	}
+
+	// Add the next point in sequence, which must have a higher X value than any before it
+	void append(double x, double y) {
+		final long sequence = mNextSequence++;
+		for (Level level : mLevels)
+			level.append(sequence, x, y);
+
+		// Add a coarser level once the top one has a handful of buckets
+		if (mLevels.length == 0) {
+			addLevel(new Level(MIN_SHIFT, sequence, x, y));
+		} else if (mLevels[mLevels.length - 1].mSize > 4) {
+			addLevel(new Level(mLevels[mLevels.length - 1]));
+		}
+	}
+
+	// Forget buckets which only hold points that have been evicted from the store
+	void trim(long firstSequence) {
+		for (Level level : mLevels)
+			level.trim(firstSequence);
+	}
+
+	// Whether collect() can do better than the raw points with this many points to each pixel column
+	static boolean isUseful(double pointsPerColumn) {
+		return pointsPerColumn >= 2 << MIN_SHIFT;
+	}
+
+	// Collect points from first to last (store indices) for drawing with about pointsPerColumn points to each pixel
+	// column. Whole buckets from the coarsest level with at least two buckets per column contribute their four points;
+	// the partial buckets at either end contribute their raw points. Returns false, collecting nothing, if the
+	// columns are too narrow for the pyramid to help.
+	boolean collect(SeriesStore store, int first, int last, double pointsPerColumn) {
+		mSize = 0;
+
+		int shift = MIN_SHIFT - 1;
+		while ((2L << shift) * 2 <= pointsPerColumn) shift++;
+		if (!isUseful(pointsPerColumn) || mLevels.length == 0) return false;
+
+		final Level level = mLevels[Math.min(shift - MIN_SHIFT, mLevels.length - 1)];
+		final long bucketSize = 1L << level.mShift;
+		final long firstSequence = store.getFirstSequence();
+		final long from = firstSequence + first;
+		final long to = firstSequence + last;
+
+		long sequence = from;
+		while (sequence <= to) {
+			final long bucketStart = (sequence >> level.mShift) << level.mShift;
+			final long bucketEnd = bucketStart + bucketSize - 1;
+			final int bucket = (int) ((sequence >> level.mShift) - level.mFirstBucket);
+
+			if (bucketStart >= from && bucketEnd <= to && bucket >= 0 && bucket < level.mSize) {
+				appendBucket(level, bucket);
+				sequence = bucketEnd + 1;
+			} else {
+				final long end = Math.min(bucketEnd, to);
+				for (; sequence <= end; sequence++) {
+					final int index = (int) (sequence - firstSequence);
+					append(store.getX(index), store.getY(index), 1);
+				}
+			}
+		}
+		return true;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void addLevel(Level level) {
+		final Level[] levels = new Level[mLevels.length + 1];
+		System.arraycopy(mLevels, 0, levels, 0, mLevels.length);
+		levels[mLevels.length] = level;
+		mLevels = levels;
+	}
+
+	// Append a bucket's first, lowest, highest and last points in x order, skipping any that are the same point
+	private void appendBucket(Level level, int bucket) {
+		final boolean minFirst = level.mMinXs[bucket] < level.mMaxXs[bucket];
+
+		append(level.mFirstXs[bucket], level.mFirstYs[bucket], 4);
+		if (minFirst) {
+			appendAfterLast(level.mMinXs[bucket], level.mMinYs[bucket]);
+			appendAfterLast(level.mMaxXs[bucket], level.mMaxYs[bucket]);
+		} else {
+			appendAfterLast(level.mMaxXs[bucket], level.mMaxYs[bucket]);
+			appendAfterLast(level.mMinXs[bucket], level.mMinYs[bucket]);
+		}
+		appendAfterLast(level.mLastXs[bucket], level.mLastYs[bucket]);
+	}
+
+	private void appendAfterLast(double x, double y) {
+		if (x > mXs[mSize - 1]) append(x, y, 1);
+	}
+
+	private void append(double x, double y, int reserve) {
+		if (mSize + reserve > mXs.length) {
+			final int capacity = Math.max(mSize + reserve, mXs.length + (mXs.length >> 1));
+			final double[] xs = new double[capacity];
+			final double[] ys = new double[capacity];
+			System.arraycopy(mXs, 0, xs, 0, mSize);
+			System.arraycopy(mYs, 0, ys, 0, mSize);
+			mXs = xs;
+			mYs = ys;
+		}
+		mXs[mSize] = x;
+		mYs[mSize] = y;
+		mSize++;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// One level of the pyramid: buckets of 2^mShift points, the first of which is bucket number mFirstBucket
+	private static final class Level {
+		final int mShift;
+		long mFirstBucket;
+		int mSize;
+
+		double[] mFirstXs;
+		double[] mFirstYs;
+		double[] mMinXs;
+		double[] mMinYs;
+		double[] mMaxXs;
+		double[] mMaxYs;
+		double[] mLastXs;
+		double[] mLastYs;
+
+		// A level whose first bucket holds just this point
+		Level(int shift, long sequence, double x, double y) {
+			mShift = shift;
+			mFirstBucket = sequence >> shift;
+			allocate(16);
+			mSize = 1;
+			mFirstXs[0] = mMinXs[0] = mMaxXs[0] = mLastXs[0] = x;
+			mFirstYs[0] = mMinYs[0] = mMaxYs[0] = mLastYs[0] = y;
+		}
+
+		// A level with buckets twice the size of the finer one, made by merging its buckets in pairs
+		Level(Level finer) {
+			mShift = finer.mShift + 1;
+			mFirstBucket = finer.mFirstBucket >> 1;
+			allocate(Math.max(16, finer.mSize));
+
+			for (int i = 0; i < finer.mSize; i++) {
+				final int bucket = (int) (((finer.mFirstBucket + i) >> 1) - mFirstBucket);
+				if (bucket == mSize) {
+					mSize++;
+					mFirstXs[bucket] = finer.mFirstXs[i];
+					mFirstYs[bucket] = finer.mFirstYs[i];
+					mMinXs[bucket] = finer.mMinXs[i];
+					mMinYs[bucket] = finer.mMinYs[i];
+					mMaxXs[bucket] = finer.mMaxXs[i];
+					mMaxYs[bucket] = finer.mMaxYs[i];
+				} else {
+					if (finer.mMinYs[i] < mMinYs[bucket]) {
+						mMinXs[bucket] = finer.mMinXs[i];
+						mMinYs[bucket] = finer.mMinYs[i];
+					}
+					if (finer.mMaxYs[i] > mMaxYs[bucket]) {
+						mMaxXs[bucket] = finer.mMaxXs[i];
+						mMaxYs[bucket] = finer.mMaxYs[i];
+					}
+				}
+				mLastXs[bucket] = finer.mLastXs[i];
+				mLastYs[bucket] = finer.mLastYs[i];
+			}
+		}
+
+		void append(long sequence, double x, double y) {
+			final int bucket = (int) ((sequence >> mShift) - mFirstBucket);
+			if (bucket == mSize) {
+				if (mSize == mFirstXs.length) allocate(mSize + (mSize >> 1));
+				mSize++;
+				mFirstXs[bucket] = mMinXs[bucket] = mMaxXs[bucket] = x;
+				mFirstYs[bucket] = mMinYs[bucket] = mMaxYs[bucket] = y;
+			} else {
+				if (y < mMinYs[bucket]) {
+					mMinXs[bucket] = x;
+					mMinYs[bucket] = y;
+				}
+				if (y > mMaxYs[bucket]) {
+					mMaxXs[bucket] = x;
+					mMaxYs[bucket] = y;
+				}
+			}
+			mLastXs[bucket] = x;
+			mLastYs[bucket] = y;
+		}
+
+		// Drop the buckets before the one holding firstSequence, once there are enough of them to be worth the copy
+		void trim(long firstSequence) {
+			final int stale = (int) Math.min((firstSequence >> mShift) - mFirstBucket, mSize);
+			if (stale < 16 || stale < mSize / 2) return;
+
+			mSize -= stale;
+			mFirstBucket += stale;
+			for (double[] column : columns())
+				System.arraycopy(column, stale, column, 0, mSize);
+		}
+
+		private void allocate(int capacity) {
+			mFirstXs = grow(mFirstXs, capacity);
+			mFirstYs = grow(mFirstYs, capacity);
+			mMinXs = grow(mMinXs, capacity);
+			mMinYs = grow(mMinYs, capacity);
+			mMaxXs = grow(mMaxXs, capacity);
+			mMaxYs = grow(mMaxYs, capacity);
+			mLastXs = grow(mLastXs, capacity);
+			mLastYs = grow(mLastYs, capacity);
+		}
+
+		private double[] grow(double[] column, int capacity) {
+			final double[] grown = new double[capacity];
+			if (column != null) System.arraycopy(column, 0, grown, 0, mSize);
+			return grown;
+		}
+
+		private double[][] columns() {
+			return new double[][] { mFirstXs, mFirstYs, mMinXs, mMinYs, mMaxXs, mMaxYs, mLastXs, mLastYs };
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.fima.chartview;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// A lock-free multi-producer, single-consumer queue of points waiting to be added to a series. Any number of threads
+// can offer points; only one thread at a time may drain them. Producers never block or spin: each offer is a single
+// atomic swap of the tail, after which the new node is linked in.
+final class PointQueue {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// The consumer's end. mHead is a sentinel whose points have already been taken
+	private Node mHead = new Node(null, null, 0, 0);
+	private final AtomicReference<Node> mTail = new AtomicReference<Node>(mHead);
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	void offer(double x, double y) {
+		final Node node = new Node(null, null, 0, 1);
+		node.mX = x;
+		node.mY = y;
+		append(node);
+	}
+
+	// Queue a run of points. The arrays are copied, so the caller is free to reuse them
+	void offer(double[] xs, double[] ys, int offset, int length) {
+		final double[] xsCopy = new double[length];
+		final double[] ysCopy = new double[length];
+		System.arraycopy(xs, offset, xsCopy, 0, length);
+		System.arraycopy(ys, offset, ysCopy, 0, length);
+		append(new Node(xsCopy, ysCopy, 0, length));
+	}
+
+	// Pass every point queued so far to the consumer, in the order they were offered. Must only be called from one
+	// thread at a time. Returns the number of points drained.
+	int drain(Consumer consumer) {
+		int count = 0;
+		Node next;
+		while ((next = mHead.mNext) != null) {
+			if (next.mXs == null) {
+				consumer.accept(next.mX, next.mY);
+			} else {
+				for (int i = next.mOffset; i < next.mOffset + next.mLength; i++)
+					consumer.accept(next.mXs[i], next.mYs[i]);
+			}
+			count += next.mLength;
+			mHead = next;
+		}
+		return count;
+	}
+
+	boolean isEmpty() {
+		return mHead.mNext == null;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void append(Node node) {
+		final Node previous = mTail.getAndSet(node);
+		// Until this write lands the consumer simply stops at previous, and picks node up on its next drain
+		previous.mNext = node;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	interface Consumer {
+		void accept(double x, double y);
+	}
+
+	private static final class Node {
+		// Either a single point (mXs == null) or a run of points from a pair of arrays
+		double mX;
+		double mY;
+		final double[] mXs;
+		final double[] mYs;
+		final int mOffset;
+		final int mLength;
+
+		volatile Node mNext;
+
+		Node(double[] xs, double[] ys, int offset, int length) {
+			mXs = xs;
+			mYs = ys;
+			mOffset = offset;
+			mLength = length;
+		}
+	}
+}
@@ -0,0 +1,455 @@
+package com.fima.chartview;
+
+// Columnar storage for a series: parallel X and Y arrays kept sorted by X. Like the TreeSet it replaces, a point whose X
+// value is already present is ignored rather than stored twice.
+//
+// The columns are circular buffers, so the first point can be dropped in O(1). A store created with a fixed capacity
+// never grows: once it is full the owner evicts the first point with removeFirst() before adding another.
+//
+// The lowest and highest Y values are tracked with a pair of monotonic deques of point sequence numbers, which makes
+// appending and removing the first point amortised O(1) while keeping getMinY()/getMaxY() exact. Changes anywhere else
+// shift the columns (O(n) anyway), so they just mark the deques stale to be rebuilt on the next query.
+final class PointStore implements SeriesStore {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private double[] mXs;
+	private double[] mYs;
+	private int mHead; // array index of the first point
+	private int mSize;
+	private final boolean mFixedCapacity;
+
+	// Sequence number of the first point; the point at index i has sequence number mFirstSequence + i
+	private long mFirstSequence;
+	// Sequence numbers of the candidates for the lowest/highest Y value, with the current one at the front
+	private final SequenceDeque mMinYs = new SequenceDeque();
+	private final SequenceDeque mMaxYs = new SequenceDeque();
+	private boolean mRangeStale;
+
+	// The Y range handed over with adopted points. It stands in for the deques (which are left stale) until the points
+	// next change.
+	private boolean mRangeKnown;
+	private double mKnownMinY;
+	private double mKnownMaxY;
+
+	// Built the first time a zoomed-out chart asks for it, then kept up to date as points are appended
+	private PointPyramid mPyramid;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	PointStore() {
+		this(DEFAULT_CAPACITY, false);
+	}
+
+	PointStore(int capacity, boolean fixed) {
+		mXs = new double[Math.max(capacity, 1)];
+		mYs = new double[Math.max(capacity, 1)];
+		mFixedCapacity = fixed;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	@Override
+	public double getX(int index) {
+		return mXs[physicalIndex(index)];
+	}
+
+	@Override
+	public double getY(int index) {
+		return mYs[physicalIndex(index)];
+	}
+
+	// The most points this store can hold, or -1 if it grows as needed
+	@Override
+	public int getCapacity() {
+		return mFixedCapacity ? mXs.length : -1;
+	}
+
+	@Override
+	public boolean isFull() {
+		return mFixedCapacity && mSize == mXs.length;
+	}
+
+	// Sequence number of the first point. Every point appended gets the next number, and evicting the first point
+	// doesn't renumber the others.
+	@Override
+	public long getFirstSequence() {
+		return mFirstSequence;
+	}
+
+	// The multi-resolution index over the stored points, built if necessary
+	@Override
+	public PointPyramid getPyramid() {
+		if (mPyramid == null) mPyramid = new PointPyramid(this);
+		return mPyramid;
+	}
+
+	// The lowest Y value stored. Only valid when the store isn't empty.
+	@Override
+	public double getMinY() {
+		if (mRangeKnown) return mKnownMinY;
+		if (mRangeStale) rebuildRange();
+		return getY((int) (mMinYs.peekFirst() - mFirstSequence));
+	}
+
+	// The highest Y value stored. Only valid when the store isn't empty.
+	@Override
+	public double getMaxY() {
+		if (mRangeKnown) return mKnownMaxY;
+		if (mRangeStale) rebuildRange();
+		return getY((int) (mMaxYs.peekFirst() - mFirstSequence));
+	}
+
+	// Add a point, keeping the columns sorted. Returns false if a point with this X value is already stored.
+	@Override
+	public boolean add(double x, double y) {
+		// Fast path: points usually arrive in X order, so just append
+		if (mSize == 0 || x > getX(mSize - 1)) {
+			mRangeKnown = false;
+			ensureCapacity(mSize + 1);
+			final int index = physicalIndex(mSize);
+			mXs[index] = x;
+			mYs[index] = y;
+			mSize++;
+			if (!mRangeStale) track(mSize - 1);
+			if (mPyramid != null) mPyramid.append(x, y);
+			return true;
+		}
+
+		int index = indexOf(x);
+		if (index >= 0) return false;
+		mRangeKnown = false;
+
+		// Shift everything after the insertion point along by one
+		index = -(index + 1);
+		ensureCapacity(mSize + 1);
+		unwrap();
+		System.arraycopy(mXs, index, mXs, index + 1, mSize - index);
+		System.arraycopy(mYs, index, mYs, index + 1, mSize - index);
+		mXs[index] = x;
+		mYs[index] = y;
+		mSize++;
+		mRangeStale = true;
+		mPyramid = null;
+		return true;
+	}
+
+	// Remove the point with this X value. Returns false if there isn't one.
+	@Override
+	public boolean remove(double x) {
+		final int index = indexOf(x);
+		if (index < 0) return false;
+
+		removeAt(index);
+		return true;
+	}
+
+	void removeAt(int index) {
+		if (index == 0) {
+			removeFirst();
+			return;
+		}
+
+		mRangeKnown = false;
+		unwrap();
+		System.arraycopy(mXs, index + 1, mXs, index, mSize - index - 1);
+		System.arraycopy(mYs, index + 1, mYs, index, mSize - index - 1);
+		mSize--;
+		mRangeStale = true;
+		mPyramid = null;
+	}
+
+	// Drop the point with the lowest X value, in O(1)
+	@Override
+	public void removeFirst() {
+		mRangeKnown = false;
+		if (!mRangeStale) {
+			if (mMinYs.peekFirst() == mFirstSequence) mMinYs.pollFirst();
+			if (mMaxYs.peekFirst() == mFirstSequence) mMaxYs.pollFirst();
+		}
+
+		mHead = physicalIndex(1);
+		mSize--;
+		mFirstSequence++;
+		if (mSize == 0) mHead = 0;
+		if (mPyramid != null) mPyramid.trim(mFirstSequence);
+	}
+
+	@Override
+	public void clear() {
+		mHead = 0;
+		mSize = 0;
+		mFirstSequence = 0;
+		mMinYs.clear();
+		mMaxYs.clear();
+		mRangeStale = false;
+		mRangeKnown = false;
+		mPyramid = null;
+	}
+
+	// Take over the first length points in the xs and ys arrays, e.g. as read from a snapshot. They must already be
+	// sorted by X without repeats, and minY and maxY must be their Y range (or NaN if it isn't known), so neither the
+	// order nor the range is worked out here; the range is only tracked from scratch once the points change. The arrays
+	// must be the store's capacity if it's fixed, or hold at least one point otherwise.
+	void adopt(double[] xs, double[] ys, int length, double minY, double maxY) {
+		if (xs.length != ys.length || length > xs.length || xs.length == 0 || (mFixedCapacity && xs.length != mXs.length))
+			throw new IllegalArgumentException("Can't adopt " + length + " points from arrays of " + xs.length);
+
+		clear();
+		mXs = xs;
+		mYs = ys;
+		mSize = length;
+		mRangeStale = true;
+		mRangeKnown = length > 0 && !Double.isNaN(minY) && !Double.isNaN(maxY);
+		mKnownMinY = minY;
+		mKnownMaxY = maxY;
+	}
+
+	// Replace the contents with length points read from the xs and ys arrays, starting at offset. Input which is
+	// already sorted by X is copied and has its range tracked in a single pass; anything else is then sorted, keeping
+	// the first of any points with the same X value. A fixed-capacity store keeps the points with the highest X values.
+	@Override
+	public void set(double[] xs, double[] ys, int offset, int length) {
+		clear();
+
+		if (!mFixedCapacity && length > mXs.length) resize(length);
+
+		if (length <= mXs.length) {
+			load(xs, ys, offset, length);
+		} else if (isSorted(xs, offset, length)) {
+			load(xs, ys, offset + length - mXs.length, mXs.length);
+		} else {
+			final PointStore sorted = new PointStore(length, false);
+			sorted.load(xs, ys, offset, length);
+			load(sorted.mXs, sorted.mYs, Math.max(sorted.mSize - mXs.length, 0), Math.min(sorted.mSize, mXs.length));
+		}
+	}
+
+	// Binary search for an X value, with the same return convention as Arrays.binarySearch (whose ranged version isn't
+	// available on API 8)
+	@Override
+	public int indexOf(double x) {
+		int low = 0;
+		int high = mSize - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final double midX = getX(mid);
+			if (midX < x) low = mid + 1;
+			else if (midX > x) high = mid - 1;
+			else return mid;
+		}
+		return -(low + 1);
+	}
+
+	// Index of the first point with an X value of at least x, or size() if there isn't one
+	@Override
+	public int ceilingIndex(double x) {
+		final int index = indexOf(x);
+		return index >= 0 ? index : -(index + 1);
+	}
+
+	// Index of the last point with an X value of at most x, or -1 if there isn't one
+	@Override
+	public int floorIndex(double x) {
+		final int index = indexOf(x);
+		return index >= 0 ? index : -(index + 1) - 1;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Copy points into the (empty, unwrapped and big enough) columns
+	private void load(double[] xs, double[] ys, int offset, int length) {
+		boolean sorted = true;
+		for (int i = 0; i < length; i++) {
+			final double x = xs[offset + i];
+			if (i > 0 && x <= mXs[i - 1]) sorted = false;
+			mXs[i] = x;
+			mYs[i] = ys[offset + i];
+			mSize++;
+			if (sorted) track(i);
+		}
+
+		if (!sorted) {
+			sortAndRemoveDuplicates();
+			rebuildRange();
+		}
+	}
+
+	private static boolean isSorted(double[] xs, int offset, int length) {
+		for (int i = offset + 1; i < offset + length; i++)
+			if (xs[i] <= xs[i - 1]) return false;
+		return true;
+	}
+
+	// Stable merge sort of the (unwrapped) columns by X, then drop all but the first point for each X value
+	private void sortAndRemoveDuplicates() {
+		double[] xs = mXs;
+		double[] ys = mYs;
+		double[] sortedXs = new double[mXs.length];
+		double[] sortedYs = new double[mYs.length];
+
+		for (int width = 1; width < mSize; width *= 2) {
+			for (int low = 0; low < mSize; low += 2 * width) {
+				final int middle = Math.min(low + width, mSize);
+				final int high = Math.min(low + 2 * width, mSize);
+				int left = low;
+				int right = middle;
+				for (int i = low; i < high; i++) {
+					if (left < middle && (right >= high || xs[left] <= xs[right])) {
+						sortedXs[i] = xs[left];
+						sortedYs[i] = ys[left++];
+					} else {
+						sortedXs[i] = xs[right];
+						sortedYs[i] = ys[right++];
+					}
+				}
+			}
+
+			double[] swap = xs;
+			xs = sortedXs;
+			sortedXs = swap;
+			swap = ys;
+			ys = sortedYs;
+			sortedYs = swap;
+		}
+		mXs = xs;
+		mYs = ys;
+
+		int size = 0;
+		for (int i = 0; i < mSize; i++) {
+			if (size > 0 && mXs[i] == mXs[size - 1]) continue;
+			mXs[size] = mXs[i];
+			mYs[size] = mYs[i];
+			size++;
+		}
+		mSize = size;
+	}
+
+	// Add the point at index (which must be the last one tracked so far) to the range deques, dropping any candidates
+	// it beats
+	private void track(int index) {
+		final long sequence = mFirstSequence + index;
+		final double y = getY(index);
+
+		while (!mMinYs.isEmpty() && getY((int) (mMinYs.peekLast() - mFirstSequence)) >= y)
+			mMinYs.pollLast();
+		mMinYs.addLast(sequence);
+
+		while (!mMaxYs.isEmpty() && getY((int) (mMaxYs.peekLast() - mFirstSequence)) <= y)
+			mMaxYs.pollLast();
+		mMaxYs.addLast(sequence);
+	}
+
+	private void rebuildRange() {
+		mMinYs.clear();
+		mMaxYs.clear();
+
+		for (int i = 0; i < mSize; i++)
+			track(i);
+
+		mRangeStale = false;
+	}
+
+	private int physicalIndex(int index) {
+		final int physical = mHead + index;
+		return physical < mXs.length ? physical : physical - mXs.length;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= mXs.length) return;
+		if (mFixedCapacity) throw new IllegalStateException("PointStore is full");
+
+		// Grow by half again so that appends are amortised O(1)
+		resize(Math.max(capacity, mXs.length + (mXs.length >> 1)));
+	}
+
+	// Move the points back to the start of the columns so that they can be shifted around with System.arraycopy
+	private void unwrap() {
+		if (mHead != 0) resize(mXs.length);
+	}
+
+	private void resize(int capacity) {
+		mXs = copy(mXs, capacity);
+		mYs = copy(mYs, capacity);
+		mHead = 0;
+	}
+
+	// Copy a column into a new array, starting from the first point. Arrays.copyOf isn't available on API 8, and
+	// wouldn't undo the wrap-around anyway.
+	private double[] copy(double[] column, int capacity) {
+		final double[] copy = new double[capacity];
+		final int firstPart = Math.min(mSize, column.length - mHead);
+		System.arraycopy(column, mHead, copy, 0, firstPart);
+		System.arraycopy(column, 0, copy, firstPart, mSize - firstPart);
+		return copy;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// A growable circular deque of longs. ArrayDeque would box them, and isn't available on API 8 anyway.
+	private static final class SequenceDeque {
+		private long[] mValues = new long[DEFAULT_CAPACITY];
+		private int mHead;
+		private int mSize;
+
+		boolean isEmpty() {
+			return mSize == 0;
+		}
+
+		long peekFirst() {
+			return mValues[mHead];
+		}
+
+		long peekLast() {
+			return mValues[index(mSize - 1)];
+		}
+
+		void pollFirst() {
+			mHead = index(1);
+			mSize--;
+		}
+
+		void pollLast() {
+			mSize--;
+		}
+
+		void addLast(long value) {
+			if (mSize == mValues.length) {
+				final long[] values = new long[mValues.length * 2];
+				final int firstPart = mValues.length - mHead;
+				System.arraycopy(mValues, mHead, values, 0, firstPart);
+				System.arraycopy(mValues, 0, values, firstPart, mSize - firstPart);
+				mValues = values;
+				mHead = 0;
+			}
+			mValues[index(mSize)] = value;
+			mSize++;
+		}
+
+		void clear() {
+			mHead = 0;
+			mSize = 0;
+		}
+
+		private int index(int offset) {
+			final int index = mHead + offset;
+			return index < mValues.length ? index : index - mValues.length;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.fima.chartview;
+
+// The storage behind a series: its points as columns sorted by X, with the lookups drawing needs, the Y range, and the
+// changes a series can make. Stores which can't be changed (see MappedPointStore) throw UnsupportedOperationException
+// from the changes.
+interface SeriesStore extends PointColumns {
+	// The most points this store can hold, or -1 if it grows as needed
+	int getCapacity();
+
+	boolean isFull();
+
+	// Sequence number of the first point. Every point appended gets the next number, and evicting the first point
+	// doesn't renumber the others.
+	long getFirstSequence();
+
+	// The multi-resolution index over the stored points, built if necessary, or null if this store doesn't keep one
+	PointPyramid getPyramid();
+
+	// The lowest and highest Y values stored. Only valid when the store isn't empty.
+	double getMinY();
+
+	double getMaxY();
+
+	// Binary search for an X value, with the same return convention as Arrays.binarySearch
+	int indexOf(double x);
+
+	// Index of the first point with an X value of at least x, or size() if there isn't one
+	int ceilingIndex(double x);
+
+	// Index of the last point with an X value of at most x, or -1 if there isn't one
+	int floorIndex(double x);
+
+	// Add a point, keeping the columns sorted. Returns false if a point with this X value is already stored.
+	boolean add(double x, double y);
+
+	// Remove the point with this X value. Returns false if there isn't one.
+	boolean remove(double x);
+
+	// Drop the point with the lowest X value
+	void removeFirst();
+
+	void clear();
+
+	// Replace the contents with length points read from the xs and ys arrays, starting at offset
+	void set(double[] xs, double[] ys, int offset, int length);
+}
@@ -0,0 +1,22 @@
+package com.fima.chartview;
+
+// Values at which grid lines (and their labels) are drawn
+final class Ticks {
+	private Ticks() {
+	}
+
+	// numLines values evenly spaced between min and max, plus one at each end
+	static double[] evenlySpaced(int numLines, double min, double max) {
+		final double[] values = new double[numLines + 2];
+		final double step = (max - min) / (numLines + 1);
+		for (int i = 0; i < numLines + 2; i++)
+			values[i] = min + (step * i);
+		return values;
+	}
+
+	// The first value at or after min which == 0 modulo step, where a fixed-gap grid starts
+	static double firstMultiple(double min, int step) {
+		return min % step == 0 ? min : // The left bound magically should be a grid line!
+				min + (step - (min % step)); // Move to the first grid line
+	}
+}
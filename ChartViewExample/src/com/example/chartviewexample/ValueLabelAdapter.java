@@ -47,8 +47,13 @@ public class ValueLabelAdapter extends com.fima.chartview.LabelAdapter {
 
 		labelTextView.setGravity(gravity);
 		labelTextView.setPadding(8, 0, 8, 0);
-		labelTextView.setText(String.format("%.1f", getItem(position)));
+		labelTextView.setText(getFormattedLabel(getValue(position)));
 
 		return convertView;
 	}
+
+	@Override
+	public String getLabel(double value) {
+		return String.format("%.1f", value);
+	}
 }
@@ -1,9 +1,15 @@
 package com.fima.chartview;
 
-import java.util.SortedSet;
-import java.util.Collections;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.AbstractSet;
 import java.util.Collection;
-import java.util.TreeSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.graphics.Canvas;
 import android.graphics.Paint;
@@ -16,7 +22,12 @@ public abstract class AbstractSeries {
 
 	protected Paint mPaint = new Paint();
 
-	private final SortedSet<AbstractPoint> mPoints = Collections.synchronizedSortedSet(new TreeSet<AbstractPoint>());
+	// Points are stored as sorted primitive columns; mPoints is a SortedSet view onto them for existing callers
+	private final SeriesStore mStore;
+	private final PointSet mPoints = new PointSet(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+	// Reused for every drawPoint call, so subclasses must not hold on to the point they're given
+	private final StoredPoint mDrawPoint = new StoredPoint();
 
 	private double mMinX = Double.MAX_VALUE;
 	private double mMaxX = Double.MIN_VALUE;
@@ -25,6 +36,40 @@ public abstract class AbstractSeries {
 
 	private double mRangeX = 0;
 	private double mRangeY = 0;
+
+	// Bumped whenever the stored points or line style change, so that cached drawing data can tell when it's stale
+	private int mVersion;
+
+	// Points posted from other threads, waiting for the chart to drain them on its next frame
+	private final PointQueue mPendingPoints = new PointQueue();
+	private final AtomicBoolean mDrainRequested = new AtomicBoolean();
+	private int mDrainedCount;
+	private final PointQueue.Consumer mPendingConsumer = new PointQueue.Consumer() {
+		@Override
+		public void accept(double x, double y) {
+			if (store(x, y)) mDrainedCount++;
+		}
+	};
+
+	// The values at the bottom-left corner of the grid, for the frame being drawn
+	private double mOriginX;
+	private double mOriginY;
+
+	// Told about changes, usually by the chart this series has been added to
+	private volatile Observer mObserver;
+
+	// The x-values touched by changes since the observer was last told
+	private double mChangedFromX = Double.POSITIVE_INFINITY;
+	private double mChangedToX = Double.NEGATIVE_INFINITY;
+
+	// What the last draw did, for FrameMetrics
+	int mLastPointsVisited;
+	int mLastPointsDrawn;
+	int mLastCanvasCalls;
+	boolean mLastProjectionCached;
+
+	// Draw one stored point. The point is the series' own, holding just the stored x and y values, so it's never the
+	// object (or AbstractPoint subclass) that was added, and it's reused for every call.
 	protected abstract void drawPoint(Canvas canvas, AbstractPoint point, float scaleX, float scaleY, Rect gridBounds);
 
 
@@ -32,56 +77,155 @@ public abstract class AbstractSeries {
 	// CONSTRUCTORS
 	//////////////////////////////////////////////////////////////////////////////////////
 	public AbstractSeries() {
+		mStore = new PointStore();
+		mPaint.setAntiAlias(true);
+	}
+
+	// A series which holds at most capacity points. Once it's full, adding a point evicts the one with the lowest
+	// x-value in O(1), so memory use stays flat however long points keep arriving.
+	public AbstractSeries(int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		mStore = new PointStore(capacity, true);
 		mPaint.setAntiAlias(true);
 	}
 
+	// A series over points which are already stored, e.g. in a mapped file
+	AbstractSeries(SeriesStore store) {
+		mStore = store;
+		mPaint.setAntiAlias(true);
+		updateRange();
+	}
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PUBLIC METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
+	// A SortedSet view of the points, ordered by x-value. Only each point's x and y are stored, so iterating it creates
+	// new points of the series' own: they aren't the objects (or AbstractPoint subclasses) that were added.
 	public SortedSet<AbstractPoint> getPoints() {
 		return mPoints;
 	}
 
-	public void setPoints(Collection<? extends AbstractPoint> points) {
-		mPoints.clear();
-		mPoints.addAll(points);
+	public synchronized void setPoints(Collection<? extends AbstractPoint> points) {
+		mStore.clear();
+		for (AbstractPoint point : points)
+			store(point.getX(), point.getY());
+
+		touchAll();
+		onPointsChanged();
+	}
+
+	// Replace all points with the x/y values from a pair of arrays, without creating a point object for each one. Input
+	// which is already sorted by x-value loads in a single pass.
+	public void setPoints(double[] xs, double[] ys) {
+		if (xs.length != ys.length) throw new IllegalArgumentException("xs and ys must be the same length");
+		setPoints(xs, ys, 0, xs.length);
+	}
+
+	public synchronized void setPoints(double[] xs, double[] ys, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > xs.length || offset + length > ys.length)
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+
+		mStore.set(xs, ys, offset, length);
+
+		touchAll();
+		onPointsChanged();
+	}
+
+	// Only the point's x and y values are kept, not the point itself
+	public synchronized void addPoint(AbstractPoint point) {
+		addPoint(point.getX(), point.getY());
+	}
+
+	// Add a point without allocating an AbstractPoint for it
+	public synchronized void addPoint(double x, double y) {
+		if (store(x, y)) onPointsChanged();
+	}
+
+	// Add a run of points from a pair of arrays, without creating a point object for each one. However many there are,
+	// the range is updated and the chart told once.
+	public synchronized void addPoints(double[] xs, double[] ys, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > xs.length || offset + length > ys.length)
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
 
-		recalculateRange();
+		boolean changed = false;
+		for (int i = offset; i < offset + length; i++)
+			changed |= store(xs[i], ys[i]);
+		if (changed) onPointsChanged();
 	}
 
-	public void addPoint(AbstractPoint point) {
-		extendRange(point.getX(), point.getY());
-		mPoints.add(point);
+	// Queue a point to be added before the chart next draws. Unlike addPoint this is safe to call from any thread and
+	// never blocks: however many points are posted, the chart takes them all in one batch and redraws once.
+	public void postPoint(double x, double y) {
+		mPendingPoints.offer(x, y);
+		requestDrain();
 	}
 
-	// Remove a point from the series. Avoid using this as it's potentially very costly!
-	public void removePoint(AbstractPoint point) {
-		// Is this the min/max point?
-		mPoints.remove(point);
+	// Queue a run of points to be added before the chart next draws. The arrays are copied, so can be reused straight away.
+	public void postPoints(double[] xs, double[] ys, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > xs.length || offset + length > ys.length)
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+
+		mPendingPoints.offer(xs, ys, offset, length);
+		requestDrain();
+	}
+
+	// Remove a point from the series. Removing anything but the first or last point shifts the stored columns along
+	public synchronized void removePoint(AbstractPoint point) {
+		// Points are matched by x-value, as they were in the TreeSet
+		if (mStore.remove(point.getX())) {
+			touch(point.getX());
+			onPointsChanged();
+		}
+	}
 
-		// Range corrections:
-		// If this was at the very top or bottom we're in trouble. We have to entirely re-calculate the range to condense it in vertically
-		if(point.getY() == mMinY || point.getY() == mMaxY) recalculateRange();
+	// Write the points to a snapshot file: a header holding their range, then the x and y columns in bulk. It's the
+	// format MappedSeries opens, too.
+	public synchronized void writeSnapshot(File file) throws IOException {
+		PointFile.write(file, mStore, 0, mStore.size());
+	}
 
-		// X-range corrections are much simpler as the points are sorted by x-value
-		if(point.getX() == mMinX) { // condense in from the left
-			mMinX = mPoints.first().getX();
-			mRangeX = mMaxX - mMinX;
-		} else if(point.getX() == mMaxX) { // condense in from the right
-			mMaxX = mPoints.last().getX();
-			mRangeX = mMaxX - mMinX;
+	// Replace the points with those in a snapshot file. They're already sorted and the file holds their range, so
+	// they're read straight into the series' columns without being sorted or scanned. A series with a capacity keeps the
+	// points with the highest x-values.
+	public synchronized void readSnapshot(File file) throws IOException {
+		if (!(mStore instanceof PointStore)) throw new UnsupportedOperationException("This series' points can't be replaced");
+
+		final RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			PointFile.read(input.getChannel(), (PointStore) mStore);
+		} finally {
+			input.close();
 		}
+
+		touchAll();
+		onPointsChanged();
+	}
+
+	public int getPointCount() {
+		return mStore.size();
+	}
+
+	// The most points this series holds before evicting old ones, or -1 if it's unbounded
+	public int getCapacity() {
+		return mStore.getCapacity();
+	}
+
+	// Changes every time points are added or removed, or the line style changes
+	protected int getVersion() {
+		return mVersion;
 	}
 
 	// Line properties
 
 	public void setLineColor(int color) {
 		mPaint.setColor(color);
+		onStyleChanged();
 	}
 
 	public void setLineWidth(float width) {
 		mPaint.setStrokeWidth(width);
+		onStyleChanged();
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -98,21 +242,125 @@ public abstract class AbstractSeries {
 		mRangeY = 0;
 	}
 
-	private void extendRange(double x, double y) {
-		if (x < mMinX) mMinX = x;
-		if (x > mMaxX) mMaxX = x;
-		if (y < mMinY) mMinY = y;
-		if (y > mMaxY) mMaxY = y;
+	void attach(Observer observer) {
+		mObserver = observer;
+		// Anything posted before the series was added is waiting for a frame
+		if (!mPendingPoints.isEmpty()) requestDrain();
+	}
+
+	void detach() {
+		mObserver = null;
+	}
+
+	// Whether a change to points between fromX and toX shows when drawing the window from left to right. Outside the
+	// window, only the nearest point on each side is drawn (to carry the line off the edge), so a change beyond that
+	// point can't be seen. Must be called with the series locked.
+	boolean isChangeVisible(double fromX, double toX, double left, double right) {
+		if (toX >= left && fromX <= right) return true;
+
+		if (toX < left) {
+			final int index = mStore.ceilingIndex(left) - 1;
+			return index < 0 || mStore.getX(index) <= toX;
+		}
+		final int index = mStore.floorIndex(right) + 1;
+		return index >= mStore.size() || mStore.getX(index) >= fromX;
+	}
+
+	// Add every posted point to the store, with a single range update at the end. Called by the chart on the UI thread
+	// before it draws. Returns true if any points were added.
+	synchronized boolean drainPendingPoints() {
+		// Clear the flag first so that a point posted mid-drain asks for another frame
+		mDrainRequested.set(false);
+
+		mDrainedCount = 0;
+		mPendingPoints.drain(mPendingConsumer);
+		if (mDrainedCount == 0) return false;
+
+		onPointsChanged();
+		return true;
+	}
+
+	// Ask the chart for a frame, unless one is already on its way
+	private void requestDrain() {
+		final Observer observer = mObserver;
+		if (observer != null && mDrainRequested.compareAndSet(false, true))
+			observer.onPointsPosted(this);
+	}
+
+	// The points have changed: refresh the range and tell the observer which x-values were touched
+	private void onPointsChanged() {
+		mVersion++;
+		final boolean rangeShrunk = updateRange();
+
+		final Observer observer = mObserver;
+		if (observer != null) observer.onSeriesChanged(this, mChangedFromX, mChangedToX, rangeShrunk);
+
+		mChangedFromX = Double.POSITIVE_INFINITY;
+		mChangedToX = Double.NEGATIVE_INFINITY;
+	}
+
+	// The line style has changed, so every point looks different. Subclasses call this when a setting of their own
+	// changes how the points are drawn.
+	protected void onStyleChanged() {
+		mVersion++;
+
+		final Observer observer = mObserver;
+		if (observer != null) observer.onSeriesChanged(this, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false);
+	}
+
+	// Note that a change touched the point at x
+	private void touch(double x) {
+		if (x < mChangedFromX) mChangedFromX = x;
+		if (x > mChangedToX) mChangedToX = x;
+	}
+
+	private void touchAll() {
+		mChangedFromX = Double.NEGATIVE_INFINITY;
+		mChangedToX = Double.POSITIVE_INFINITY;
+	}
+
+	// Add a point to the store, first evicting the oldest point if the series is full. Returns false if nothing changed.
+	private boolean store(double x, double y) {
+		if (mStore.isFull()) {
+			// A point before the first one would be evicted straight away, and a repeated x-value is ignored anyway
+			if (x <= mStore.getX(0) || mStore.indexOf(x) >= 0) return false;
+
+			touch(mStore.getX(0));
+			mStore.removeFirst();
+		}
+		if (!mStore.add(x, y)) return false;
+
+		touch(x);
+		return true;
+	}
+
+	// Refresh the range from the store. The x-range comes straight from the ends of the sorted columns, and the store
+	// keeps track of the y-range as points come and go, so this is amortised O(1). Returns true if the range got
+	// smaller at either end of either axis.
+	private boolean updateRange() {
+		final double minX = mMinX;
+		final double maxX = mMaxX;
+		final double minY = mMinY;
+		final double maxY = mMaxY;
+
+		if (mStore.size() == 0) {
+			resetRange();
+			return minX != mMinX;
+		}
+
+		mMinX = mStore.getX(0);
+		mMaxX = mStore.getX(mStore.size() - 1);
+		mMinY = mStore.getMinY();
+		mMaxY = mStore.getMaxY();
 
 		mRangeX = mMaxX - mMinX;
 		mRangeY = mMaxY - mMinY;
+
+		return mMinX > minX || mMaxX < maxX || mMinY > minY || mMaxY < maxY;
 	}
 
 	protected void recalculateRange() {
-		resetRange();
-
-		for (AbstractPoint point : mPoints)
-			extendRange(point.getX(), point.getY());
+		updateRange();
 	}
 
 	public double getMinX() {
@@ -141,22 +389,98 @@ public abstract class AbstractSeries {
 
 	protected void onDrawRequested(Canvas canvas, Rect gridBounds, float scaleX, float scaleY) {}
 
-	void draw(Canvas canvas, Rect gridBounds, float scaleX, float scaleY) {
+	synchronized void draw(Canvas canvas, Rect gridBounds, RectD valueBounds, float scaleX, float scaleY) {
+		setFrame(valueBounds);
+
 		onDrawRequested(canvas, gridBounds, scaleX, scaleY);
 
-		for (AbstractPoint point : mPoints)
-			drawPoint(canvas, point, scaleX, scaleY, gridBounds);
+		final int first = getFirstVisible(valueBounds);
+		final int last = getLastVisible(valueBounds);
+
+		mLastPointsVisited = Math.max(last - first + 1, 0);
+		mLastPointsDrawn = 0;
+		mLastCanvasCalls = 0;
+		mLastProjectionCached = false;
+		drawRange(canvas, first, last, scaleX, scaleY, gridBounds);
 
 		onDrawingComplete();
 	}
 
+	// Note the values at the grid's origin for a frame about to be drawn. The methods from here to getLastVisible don't
+	// lock the series, so that ParallelProjector can call them on its workers while its own thread holds the lock.
+	void setFrame(RectD valueBounds) {
+		mOriginX = valueBounds.left;
+		mOriginY = valueBounds.top;
+	}
+
+	// Only the points which land inside the grid are drawn, plus one either side so that lines run off the edges
+	int getFirstVisible(RectD valueBounds) {
+		if (Double.isNaN(valueBounds.left) || Double.isNaN(valueBounds.right)) return 0;
+		return Math.max(mStore.ceilingIndex(valueBounds.left) - 1, 0);
+	}
+
+	int getLastVisible(RectD valueBounds) {
+		final int last = mStore.size() - 1;
+		if (Double.isNaN(valueBounds.left) || Double.isNaN(valueBounds.right)) return last;
+		return Math.min(mStore.floorIndex(valueBounds.right) + 1, last);
+	}
+
+	// The x-value drawn at the left edge of the grid. Only valid while drawing.
+	protected double getOriginX() {
+		return mOriginX;
+	}
+
+	// The y-value drawn at the bottom edge of the grid. Only valid while drawing.
+	protected double getOriginY() {
+		return mOriginY;
+	}
+
+	// Draw the stored points from first to last (inclusive). By default each one is passed to drawPoint, but subclasses
+	// can override this to draw a whole run of points at once.
+	protected void drawRange(Canvas canvas, int first, int last, float scaleX, float scaleY, Rect gridBounds) {
+		for (int i = first; i <= last; i++) {
+			mDrawPoint.set(mStore.getX(i), mStore.getY(i));
+			drawPoint(canvas, mDrawPoint, scaleX, scaleY, gridBounds);
+		}
+		reportDrawn(Math.max(last - first + 1, 0), Math.max(last - first + 1, 0), false);
+	}
+
+	// Subclasses which override drawRange should report what they drew, for the chart's FrameMetrics: how many points
+	// ended up on screen, how many Canvas calls that took, and whether it reused the previous frame's projection
+	protected void reportDrawn(int pointsDrawn, int canvasCalls, boolean projectionCached) {
+		mLastPointsDrawn = pointsDrawn;
+		mLastCanvasCalls = canvasCalls;
+		mLastProjectionCached = projectionCached;
+	}
+
+	SeriesStore getStore() {
+		return mStore;
+	}
+
 	protected void onDrawingComplete() {
 	}
 
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Told about changes to a series, on whichever thread made them
+	interface Observer {
+		// Points with x-values from fromX to toX were added or removed (or everything changed, if the range is infinite).
+		// rangeShrunk is set if the series' range got smaller, so anything that's only been extending its own range
+		// needs to start again. Called with the series locked.
+		void onSeriesChanged(AbstractSeries series, double fromX, double toX, boolean rangeShrunk);
+
+		// Points were posted, and are waiting for drainPendingPoints
+		void onPointsPosted(AbstractSeries series);
+	}
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PUBLIC CLASSES
 	//////////////////////////////////////////////////////////////////////////////////////
 
+	// A series only stores its points' x and y values, and always orders them by x-value, so a subclass's own fields
+	// and compareTo don't survive being added to one
 	public static abstract class AbstractPoint implements Comparable<AbstractPoint> {
 		private double mX;
 		private double mY;
@@ -196,4 +520,144 @@ public abstract class AbstractSeries {
 	public String toString() {
 		return mPoints.toString();
 	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final class StoredPoint extends AbstractPoint {
+		StoredPoint() {
+			super();
+		}
+
+		StoredPoint(double x, double y) {
+			super(x, y);
+		}
+	}
+
+	// A SortedSet view of the stored points between fromX (inclusive) and toX (exclusive). Each iteration creates new
+	// point objects, so prefer getPointCount() and the drawing methods over this on hot paths.
+	private final class PointSet extends AbstractSet<AbstractPoint> implements SortedSet<AbstractPoint> {
+		private final double mFromX;
+		private final double mToX;
+
+		PointSet(double fromX, double toX) {
+			mFromX = fromX;
+			mToX = toX;
+		}
+
+		private int startIndex() {
+			return mStore.ceilingIndex(mFromX);
+		}
+
+		private int endIndex() {
+			return mStore.ceilingIndex(mToX);
+		}
+
+		private boolean inRange(double x) {
+			return x >= mFromX && x < mToX;
+		}
+
+		@Override
+		public Iterator<AbstractPoint> iterator() {
+			return new Iterator<AbstractPoint>() {
+				private int mIndex = startIndex();
+				private double mLastX = Double.NaN;
+
+				@Override
+				public boolean hasNext() {
+					return mIndex < mStore.size() && inRange(mStore.getX(mIndex));
+				}
+
+				@Override
+				public AbstractPoint next() {
+					if (!hasNext()) throw new NoSuchElementException();
+					mLastX = mStore.getX(mIndex);
+					return new StoredPoint(mLastX, mStore.getY(mIndex++));
+				}
+
+				@Override
+				public void remove() {
+					if (Double.isNaN(mLastX)) throw new IllegalStateException();
+					removePoint(new StoredPoint(mLastX, 0));
+					mLastX = Double.NaN;
+					mIndex--;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return Math.max(endIndex() - startIndex(), 0);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof AbstractPoint)) return false;
+			final double x = ((AbstractPoint) o).getX();
+			return inRange(x) && mStore.indexOf(x) >= 0;
+		}
+
+		@Override
+		public boolean add(AbstractPoint point) {
+			if (!inRange(point.getX())) throw new IllegalArgumentException("Point out of range: " + point);
+			final int count = mStore.size();
+			addPoint(point);
+			return mStore.size() != count;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!contains(o)) return false;
+			removePoint((AbstractPoint) o);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			if (mFromX == Double.NEGATIVE_INFINITY && mToX == Double.POSITIVE_INFINITY) {
+				synchronized (AbstractSeries.this) {
+					mStore.clear();
+					touchAll();
+					onPointsChanged();
+				}
+			} else {
+				super.clear();
+			}
+		}
+
+		@Override
+		public Comparator<? super AbstractPoint> comparator() {
+			return null; // natural ordering, by x-value
+		}
+
+		@Override
+		public SortedSet<AbstractPoint> subSet(AbstractPoint fromElement, AbstractPoint toElement) {
+			return new PointSet(Math.max(mFromX, fromElement.getX()), Math.min(mToX, toElement.getX()));
+		}
+
+		@Override
+		public SortedSet<AbstractPoint> headSet(AbstractPoint toElement) {
+			return new PointSet(mFromX, Math.min(mToX, toElement.getX()));
+		}
+
+		@Override
+		public SortedSet<AbstractPoint> tailSet(AbstractPoint fromElement) {
+			return new PointSet(Math.max(mFromX, fromElement.getX()), mToX);
+		}
+
+		@Override
+		public AbstractPoint first() {
+			final int index = startIndex();
+			if (index >= mStore.size() || !inRange(mStore.getX(index))) throw new NoSuchElementException();
+			return new StoredPoint(mStore.getX(index), mStore.getY(index));
+		}
+
+		@Override
+		public AbstractPoint last() {
+			final int index = endIndex() - 1;
+			if (index < 0 || !inRange(mStore.getX(index))) throw new NoSuchElementException();
+			return new StoredPoint(mStore.getX(index), mStore.getY(index));
+		}
+	}
 }
\ No newline at end of file
@@ -1,20 +1,34 @@
 package com.fima.chartview;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
+import android.widget.Scroller;
 
 public class ChartView extends RelativeLayout {
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -22,6 +36,18 @@ public class ChartView extends RelativeLayout {
 	//////////////////////////////////////////////////////////////////////////////////////
 
 	private static final String TAG = "ChartView";
+	private static final double[] NO_LABEL_VALUES = new double[0];
+	private static final String[] NO_LABELS = new String[0];
+	private static final float[] NO_LABEL_WIDTHS = new float[0];
+
+	// Sides of the grid, e.g. for indexing label adapters
+	private static final int SIDE_LEFT = 0;
+	private static final int SIDE_TOP = 1;
+	private static final int SIDE_RIGHT = 2;
+	private static final int SIDE_BOTTOM = 3;
+
+	// Fixed-gap grids draw at most this many lines each way
+	private static final int MAX_FIXED_GAP_LINES = 50;
 
 	// View
 
@@ -32,6 +58,16 @@ public class ChartView extends RelativeLayout {
 
 	private List<AbstractSeries> mSeries = new ArrayList<AbstractSeries>();
 
+	// Series changes reported since the last frame, as CHANGE_ flags. Series can change on any thread, so all they do
+	// is set flags (and ask for a frame if one's needed); the chart deals with them all at once before drawing.
+	private static final int CHANGE_REDRAW = 1; // something visible changed
+	private static final int CHANGE_EXTEND = 2; // a series' range may have grown
+	private static final int CHANGE_RESCAN = 4; // a series' range shrank, so the whole range needs recalculating
+	private static final int CHANGE_POSTED = 8; // points were posted, and need a frame to drain them
+	private static final int CHANGE_DRAWING = 16; // a frame is taking in changes, and checks for more once it has
+	private final AtomicInteger mSeriesChanges = new AtomicInteger();
+	private final AbstractSeries.Observer mSeriesObserver = new SeriesObserver();
+
 	// Labels
 
 	private LabelAdapter mLeftLabelAdapter;
@@ -52,8 +88,22 @@ public class ChartView extends RelativeLayout {
 	private int mLabelTextColor;
 	private float mLabelTextSize;
 
+	// The adapter version each label layout's views were last bound to, so they're only rebound when it changes
+	private int mLeftLabelsVersion = -1;
+	private int mTopLabelsVersion = -1;
+	private int mRightLabelsVersion = -1;
+	private int mBottomLabelsVersion = -1;
+
+	// Draw labels as text on the canvas instead of as views in the label layouts
+	private boolean mDrawLabelsOnCanvas;
+	private final HashMap<String, Float> mLabelWidths = new HashMap<String, Float>();
+
 	// Range
-	private RectD mValueBounds = new RectD();
+	private RectD mValueBounds = new RectD(); // the values shown in the grid: the viewport if there is one, otherwise all the data, padded
+	// The window of values shown, or null to follow the data. Series observers read it on whichever thread changed a
+	// series, so it's never changed once set: setting a viewport publishes a new RectD.
+	private volatile RectD mViewport;
+	// The data's range, without padding
 	private double mMinX = Double.MAX_VALUE;
 	private double mMaxX = Double.MIN_VALUE;
 	private double mMinY = Double.MAX_VALUE;
@@ -70,6 +120,70 @@ public class ChartView extends RelativeLayout {
 	private int mGridFixedYGap;
 	private enum Axis { X, Y }
 
+	// What the UI thread draws the grid from, refreshed every frame
+	private final GridSnapshot mGridSnapshot = new GridSnapshot(mPaint, mTextPaint);
+
+	// Pan and zoom
+
+	private boolean mPanZoomEnabled;
+	private GestureDetector mGestureDetector;
+	private ScaleGestureDetector mScaleGestureDetector;
+	private Scroller mFlingScroller;
+	private int mLastFlingX;
+	private int mLastFlingY;
+
+	// Background rendering
+
+	private boolean mRenderInBackground;
+	private ExecutorService mRenderExecutor;
+	private final Object mBufferLock = new Object();
+	private Bitmap mFrontBuffer; // the last completed frame, blitted by onDraw
+	private Bitmap mBackBuffer; // drawn into by the render thread
+	// Bumped (on the UI thread, under mBufferLock) when the buffers are released, making any task still running stale
+	private int mRenderGeneration;
+	private boolean mRenderPending;
+	private long mRenderedContentKey = -1;
+
+	// Grid layer: the grid and any labels drawn on the canvas, kept in a bitmap until something they depend on changes
+
+	private boolean mCacheGrid = true;
+	private final Object mGridLayerLock = new Object();
+	private Bitmap mGridLayer;
+	private Canvas mGridLayerCanvas;
+	private final Rect mGridLayerGridBounds = new Rect();
+	private final RectD mGridLayerValueBounds = new RectD();
+	private int mGridLayerVersion = -1;
+	private final LabelAdapter[] mGridLayerAdapters = new LabelAdapter[4];
+	private final int[] mGridLayerAdapterVersions = new int[4];
+
+	// Bumped whenever a grid or label setting changes
+	private int mGridVersion;
+
+	// Updates: while mUpdateDepth > 0, range, label and redraw work is left for endUpdate
+
+	private int mUpdateDepth;
+	private boolean mUpdatePending;
+
+	// Metrics, only gathered while there's a listener
+
+	private OnFrameMetricsListener mFrameMetricsListener;
+	private final FrameMetrics mFrameMetrics = new FrameMetrics();
+	private final FrameMetrics mBackgroundFrameMetrics = new FrameMetrics(); // only one background frame is in flight at once
+
+	// Bumped whenever something drawn into the background buffers changes, other than the series' own data
+	private int mContentVersion;
+
+	// Bumped whenever a series tells the chart its points or style changed, from whichever thread changed it
+	private final AtomicLong mSeriesContentVersion = new AtomicLong();
+
+	// Whether the series' points are saved with the chart's state, and the snapshot files they were last saved to (by
+	// series position), which the next save overwrites rather than leaving behind
+	private boolean mSaveSeries;
+	private String[] mSnapshotPaths = new String[0];
+
+	// Parallel projection, on the projector every chart shares
+	private volatile boolean mParallelProjection;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -102,6 +216,9 @@ public class ChartView extends RelativeLayout {
 		mTopLabelHeight = attributes.getDimensionPixelSize(R.styleable.ChartView_topLabelHeight, 0);
 		mRightLabelWidth = attributes.getDimensionPixelSize(R.styleable.ChartView_rightLabelWidth, 0);
 		mBottomLabelHeight = attributes.getDimensionPixelSize(R.styleable.ChartView_bottomLabelHeight, 0);
+		mRenderInBackground = attributes.getBoolean(R.styleable.ChartView_renderInBackground, false);
+		mPanZoomEnabled = attributes.getBoolean(R.styleable.ChartView_panZoomEnabled, false);
+		mDrawLabelsOnCanvas = attributes.getBoolean(R.styleable.ChartView_drawLabelsOnCanvas, false);
 
 		// left label layout
 		mLeftLabelLayout = new LinearLayout(context);
@@ -141,6 +258,12 @@ public class ChartView extends RelativeLayout {
 		mTextPaint.setTextAlign(Paint.Align.CENTER);
 		mTextPaint.setAntiAlias(true);
 		mTextPaint.setTextSize(mLabelTextSize);
+
+		// Gestures for panning and zooming the viewport
+		final ViewportGestureListener gestureListener = new ViewportGestureListener();
+		mGestureDetector = new GestureDetector(context, gestureListener);
+		mScaleGestureDetector = new ScaleGestureDetector(context, gestureListener);
+		mFlingScroller = new Scroller(context);
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -151,9 +274,11 @@ public class ChartView extends RelativeLayout {
 	 * Remove all lines from the chart
 	 */
 	public void clearSeries() {
+		for (AbstractSeries series : mSeries)
+			series.detach();
 		mSeries.clear();
-		resetRange();
-		invalidate();
+		mContentVersion++;
+		onContentChanged();
 	}
 
 	/*
@@ -162,14 +287,39 @@ public class ChartView extends RelativeLayout {
 	public void addSeries(AbstractSeries series) {
 		// Add the series
 		mSeries.add(series);
+		series.attach(mSeriesObserver);
+		mContentVersion++;
 
-		// Make sure the chart is the right size
-		resetRange();
+		// Make sure the chart is the right size, and redraw
+		onContentChanged();
+	}
+
+	// Start a batch of changes to the chart. Until the matching endUpdate, adding or clearing series, setting label
+	// adapters and setting the viewport don't update the range or labels, or redraw; endUpdate does all of that once.
+	// Updates can be nested, in which case the work is done at the outermost endUpdate.
+	public void beginUpdate() {
+		mUpdateDepth++;
+	}
 
-		// And redraw
+	public void endUpdate() {
+		if (mUpdateDepth == 0) throw new IllegalStateException("endUpdate without beginUpdate");
+		if (--mUpdateDepth > 0 || !mUpdatePending) return;
+
+		mUpdatePending = false;
+		resetRange();
 		invalidate();
 	}
 
+	// Make a batch of changes between beginUpdate and endUpdate
+	public void update(Runnable changes) {
+		beginUpdate();
+		try {
+			changes.run();
+		} finally {
+			endUpdate();
+		}
+	}
+
 	// Instruct label adapters which values to show a label at
 	private void setVerticalAdapterValues(LabelAdapter adapter) {
 		adapter.setValues(calculateLabelValues(mGridLinesVertical, mGridFixedYGap, mValueBounds.top, mValueBounds.bottom));
@@ -180,17 +330,13 @@ public class ChartView extends RelativeLayout {
 	}
 
 	// Calculate values at which to show a grid label
-	private Double[] calculateLabelValues(int numLines, int fixedGap, double minValue, double maxValue) {
-		Log.i(TAG, "Calculating label values with: numLines = "+numLines+", fixedGap = "+fixedGap+", minValue = "+minValue+", maxValue = "+maxValue);
+	private double[] calculateLabelValues(int numLines, int fixedGap, double minValue, double maxValue) {
 		if(fixedGap <= 0) { // Fixed number of lines = numLines+2 (for each end)
-			final Double[] values = new Double[numLines + 2];
-			final double step = (maxValue - minValue) / (numLines + 1);
-			for(int i = 0; i < numLines + 2; i++)
-				values[i] = minValue + (step * i);
-			Log.d(TAG, "Label values: " + Arrays.asList(values).toString());
+			final double[] values = Ticks.evenlySpaced(numLines, minValue, maxValue);
+			if (Log.isLoggable(TAG, Log.DEBUG)) Log.d(TAG, "Label values: " + Arrays.toString(values));
 			return values;
 		} else {
-			return new Double[0];
+			return NO_LABEL_VALUES;
 			// In this case, we don't use the LinearLayout to draw on the text, it gets drawn on with the grid so
 			// that the positioning is correct
 		}
@@ -198,51 +344,180 @@ public class ChartView extends RelativeLayout {
 
 	public void setLeftLabelAdapter(LabelAdapter adapter) {
 		mLeftLabelAdapter = adapter;
+		mLeftLabelsVersion = -1;
+		mContentVersion++;
+		mGridVersion++;
 
-		setVerticalAdapterValues(mLeftLabelAdapter);
+		if (!deferUpdate()) setVerticalAdapterValues(mLeftLabelAdapter);
 	}
 
 	public void setTopLabelAdapter(LabelAdapter adapter) {
 		mTopLabelAdapter = adapter;
+		mTopLabelsVersion = -1;
+		mContentVersion++;
+		mGridVersion++;
 
-		setHorizontalAdapterValues(mTopLabelAdapter);
+		if (!deferUpdate()) setHorizontalAdapterValues(mTopLabelAdapter);
 	}
 
 	public void setRightLabelAdapter(LabelAdapter adapter) {
 		mRightLabelAdapter = adapter;
+		mRightLabelsVersion = -1;
+		mContentVersion++;
+		mGridVersion++;
 
-		setVerticalAdapterValues(mRightLabelAdapter);
+		if (!deferUpdate()) setVerticalAdapterValues(mRightLabelAdapter);
 	}
 
 	public void setBottomLabelAdapter(LabelAdapter adapter) {
 		mBottomLabelAdapter = adapter;
+		mBottomLabelsVersion = -1;
+		mContentVersion++;
+		mGridVersion++;
 
-		setHorizontalAdapterValues(mBottomLabelAdapter);
+		if (!deferUpdate()) setHorizontalAdapterValues(mBottomLabelAdapter);
 	}
 
 	// Grid properties
 	public void setGridLineColor(int color) {
 		mGridLineColor = color;
+		mContentVersion++;
+		mGridVersion++;
 	}
 
 	public void setGridLineWidth(int width) {
 		mGridLineWidth = width;
+		mContentVersion++;
+		mGridVersion++;
 	}
 
 	public void setGridLinesHorizontal(int count) {
 		mGridLinesHorizontal = count;
+		mContentVersion++;
+		mGridVersion++;
 	}
 
 	public void setGridLinesVertical(int count) {
 		mGridLinesVertical = count;
+		mContentVersion++;
+		mGridVersion++;
 	}
 
 	public void setGridFixedXGap(int gap) {
 		mGridFixedXGap = gap;
+		mContentVersion++;
+		mGridVersion++;
 	}
 
 	public void setGridFixedYGap(int gap) {
 		mGridFixedYGap = gap;
+		mContentVersion++;
+		mGridVersion++;
+	}
+
+	// Show just this window of values, in the same co-ordinates as the series' points (top is the lowest y-value).
+	// This only changes how values map to the screen, so it's cheap enough to call on every frame of a pan or zoom.
+	public void setViewport(RectD viewport) {
+		publishViewport(new RectD(viewport));
+	}
+
+	// The window of values shown, or null if the chart shows all of its data
+	public RectD getViewport() {
+		return mViewport == null ? null : new RectD(mViewport);
+	}
+
+	// Go back to showing all of the data
+	public void resetViewport() {
+		mViewport = null;
+		mFlingScroller.forceFinished(true);
+		onContentChanged();
+	}
+
+	// Let the user pan (drag and fling) and zoom (pinch) the viewport
+	public void setPanZoomEnabled(boolean enabled) {
+		mPanZoomEnabled = enabled;
+	}
+
+	public boolean isPanZoomEnabled() {
+		return mPanZoomEnabled;
+	}
+
+	// Render the grid and series into an off-screen bitmap on a background thread, so that onDraw only has to copy
+	// the last finished frame onto the screen. Label adapters are still only called on the UI thread: the labels are
+	// formatted as each frame's started, and handed to the render thread with it.
+	public void setRenderInBackground(boolean renderInBackground) {
+		mRenderInBackground = renderInBackground;
+		if (!renderInBackground) releaseRenderBuffers();
+		invalidate();
+	}
+
+	public boolean isRenderInBackground() {
+		return mRenderInBackground;
+	}
+
+	// Draw the labels as text straight onto the chart's canvas, rather than asking the label adapters for views. This
+	// saves a measure and layout pass whenever the labels change, but only uses the adapters' getLabel.
+	public void setDrawLabelsOnCanvas(boolean drawLabelsOnCanvas) {
+		mDrawLabelsOnCanvas = drawLabelsOnCanvas;
+
+		// Clear out any label views, and make sure they're rebound if we switch back
+		mLeftLabelLayout.removeAllViews();
+		mTopLabelLayout.removeAllViews();
+		mRightLabelLayout.removeAllViews();
+		mBottomLabelLayout.removeAllViews();
+		mLeftLabelsVersion = mTopLabelsVersion = mRightLabelsVersion = mBottomLabelsVersion = -1;
+
+		mContentVersion++;
+		mGridVersion++;
+		invalidate();
+	}
+
+	public boolean isDrawLabelsOnCanvas() {
+		return mDrawLabelsOnCanvas;
+	}
+
+	// Keep the grid (and any labels drawn on the canvas) in a bitmap the size of the chart, and just copy that onto
+	// each frame until the bounds, grid or labels change (default: true). Turn this off to save the bitmap's memory.
+	public void setCacheGrid(boolean cacheGrid) {
+		mCacheGrid = cacheGrid;
+		if (!cacheGrid) releaseGridLayer();
+		invalidate();
+	}
+
+	public boolean isCacheGrid() {
+		return mCacheGrid;
+	}
+
+	// Save the series' points with the chart's state, so that they're restored after a configuration change or the
+	// process being killed (default: false). Each series is written as a snapshot file in the cache directory, which
+	// only the file's name goes into the saved state; when the state is restored, each snapshot is read back into the
+	// series the chart holds at the same position, and deleted. Saving again overwrites the same files, so however often
+	// the state's saved, there's only ever one snapshot per series. Mapped series aren't saved, since they're already on
+	// disk. The chart needs an id for its state to be saved at all.
+	public void setSaveSeries(boolean saveSeries) {
+		mSaveSeries = saveSeries;
+	}
+
+	public boolean isSaveSeries() {
+		return mSaveSeries;
+	}
+
+	// Project the LinearSeries' points on all of the device's cores before each frame draws them (default: false).
+	// Worth it when many points are projected each frame, e.g. dozens of series of tens of thousands of points; the
+	// lines drawn are exactly the same either way. All charts share one set of worker threads, projecting one frame at
+	// a time.
+	public void setParallelProjection(boolean parallelProjection) {
+		mParallelProjection = parallelProjection;
+		invalidate();
+	}
+
+	public boolean isParallelProjection() {
+		return mParallelProjection;
+	}
+
+	// Be told what went into drawing each frame. With no listener (the default), nothing is measured.
+	public void setOnFrameMetricsListener(OnFrameMetricsListener listener) {
+		mFrameMetricsListener = listener;
 	}
 
 	// Reset the visible range to show nothing
@@ -257,13 +532,13 @@ public class ChartView extends RelativeLayout {
 			extendRange(series.getMaxX(), series.getMaxY());
 		}
 
-		Log.d(TAG, "New chart range: [" + mMinX + "," + mMinY + "][" + mMaxX + "," + mMaxY + "]");
+		if (Log.isLoggable(TAG, Log.DEBUG)) Log.d(TAG, "New chart range: [" + mMinX + "," + mMinY + "][" + mMaxX + "," + mMaxY + "]");
 
-		// Update labels
-		if(mLeftLabelAdapter != null) setVerticalAdapterValues(mLeftLabelAdapter);
-		if(mRightLabelAdapter != null) setVerticalAdapterValues(mRightLabelAdapter);
-		if(mTopLabelAdapter != null) setHorizontalAdapterValues(mTopLabelAdapter);
-		if(mBottomLabelAdapter!= null) setHorizontalAdapterValues(mBottomLabelAdapter);
+		// A viewport overrides the data's range
+		if (mViewport != null) mValueBounds.set(mViewport);
+		else setValueBoundsToRange();
+
+		onValueBoundsChanged();
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -280,6 +555,7 @@ public class ChartView extends RelativeLayout {
 		final int gridBottom = getHeight() - mBottomLabelHeight - mGridLineWidth;
 
 		mGridBounds.set(gridLeft, gridTop, gridRight, gridBottom);
+		mContentVersion++;
 
 		// Set sizes
 		LayoutParams leftParams = (LayoutParams) mLeftLabelLayout.getLayoutParams();
@@ -309,20 +585,129 @@ public class ChartView extends RelativeLayout {
 	protected void onDraw(Canvas canvas) {
 		super.onDraw(canvas);
 
+		final long frameStart = mFrameMetricsListener != null ? System.nanoTime() : 0;
+
+		// Take in any points posted from other threads, then deal with every series change since the last frame
+		applySeriesChanges();
+
 		// How much to scale values to drawing co-ordinates
 		final float scaleX = (float) mGridBounds.width() / (float) mValueBounds.width();
 		final float scaleY = (float) mGridBounds.height() / (float) mValueBounds.height();
 
-		// Draw on the grid lines and labels
-		Log.d(TAG, "Drawing grid lines");
-		drawGrid(canvas, scaleX, scaleY);
-		Log.d(TAG, "Drawing labels");
-		drawLabels();
+		if (mRenderInBackground) {
+			if (!mDrawLabelsOnCanvas) drawLabels();
+			drawBackgroundFrame(canvas, scaleX, scaleY);
+			return;
+		}
+
+		// Draw on the grid lines, labels and series
+		snapshotGridSettings(mGridSnapshot);
+		final OnFrameMetricsListener metricsListener = mFrameMetricsListener;
+		if (metricsListener == null) {
+			drawFrame(canvas, getWidth(), getHeight(), mGridBounds, mValueBounds, scaleX, scaleY, mSeries, mGridSnapshot, true, null);
+		} else {
+			drawFrame(canvas, getWidth(), getHeight(), mGridBounds, mValueBounds, scaleX, scaleY, mSeries, mGridSnapshot, true, mFrameMetrics);
+			mFrameMetrics.mFrameNanos = System.nanoTime() - frameStart;
+			metricsListener.onFrameMetrics(mFrameMetrics);
+		}
+	}
 
-		Log.d(TAG, "Drawing series");
-		// Draw on the series
-		for (AbstractSeries series : mSeries)
-			series.draw(canvas, mGridBounds, scaleX, scaleY);
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		if (!mPanZoomEnabled) return super.onTouchEvent(event);
+
+		boolean handled = mScaleGestureDetector.onTouchEvent(event);
+		handled |= mGestureDetector.onTouchEvent(event);
+		return handled || super.onTouchEvent(event);
+	}
+
+	@Override
+	public void computeScroll() {
+		super.computeScroll();
+
+		// Carry on with a fling
+		if (mFlingScroller.computeScrollOffset()) {
+			final int x = mFlingScroller.getCurrX();
+			final int y = mFlingScroller.getCurrY();
+			panBy(mLastFlingX - x, mLastFlingY - y);
+			mLastFlingX = x;
+			mLastFlingY = y;
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		releaseRenderBuffers();
+		releaseGridLayer();
+	}
+
+	@Override
+	protected Parcelable onSaveInstanceState() {
+		final Parcelable superState = super.onSaveInstanceState();
+		if (!mSaveSeries) return superState;
+
+		final String[] snapshots = new String[mSeries.size()];
+		for (int i = 0; i < mSeries.size(); i++) {
+			final AbstractSeries series = mSeries.get(i);
+			if (!(series.getStore() instanceof PointStore)) continue;
+
+			// Overwrite the series' last snapshot, if it has one
+			File snapshot = i < mSnapshotPaths.length && mSnapshotPaths[i] != null ? new File(mSnapshotPaths[i]) : null;
+			try {
+				if (snapshot == null) snapshot = File.createTempFile("chartview", ".snapshot", getContext().getCacheDir());
+				series.writeSnapshot(snapshot);
+				snapshots[i] = snapshot.getPath();
+			} catch (IOException e) {
+				Log.w(TAG, "Couldn't save series " + i, e);
+				if (snapshot != null) snapshot.delete();
+			}
+		}
+
+		// Delete snapshots which weren't overwritten, e.g. of series that have since been removed
+		for (int i = 0; i < mSnapshotPaths.length; i++) {
+			if (mSnapshotPaths[i] != null && (i >= snapshots.length || snapshots[i] == null))
+				new File(mSnapshotPaths[i]).delete();
+		}
+		mSnapshotPaths = snapshots;
+
+		final SavedState state = new SavedState(superState);
+		state.mSnapshots = snapshots;
+		return state;
+	}
+
+	@Override
+	protected void onRestoreInstanceState(Parcelable state) {
+		if (!(state instanceof SavedState)) {
+			super.onRestoreInstanceState(state);
+			return;
+		}
+
+		final SavedState savedState = (SavedState) state;
+		super.onRestoreInstanceState(savedState.getSuperState());
+
+		beginUpdate();
+		try {
+			for (int i = 0; i < savedState.mSnapshots.length; i++) {
+				if (savedState.mSnapshots[i] == null) continue;
+
+				final File snapshot = new File(savedState.mSnapshots[i]);
+				try {
+					if (i < mSeries.size()) mSeries.get(i).readSnapshot(snapshot);
+				} catch (IOException e) {
+					Log.w(TAG, "Couldn't restore series " + i, e);
+				} catch (UnsupportedOperationException e) {
+					Log.w(TAG, "Couldn't restore series " + i, e);
+				} finally {
+					snapshot.delete();
+				}
+			}
+		} finally {
+			endUpdate();
+		}
+
+		// Save to the same files next time
+		mSnapshotPaths = savedState.mSnapshots;
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -333,146 +718,611 @@ public class ChartView extends RelativeLayout {
 	 * Range calculations
 	 */
 
-	// Expand the range of values shown
+	// Recalculate the range (and so the labels) and redraw, unless that's been left until the end of an update
+	private void onContentChanged() {
+		if (deferUpdate()) return;
+
+		resetRange();
+		invalidate();
+	}
+
+	// If in the middle of an update, note that endUpdate has work to do and return true
+	private boolean deferUpdate() {
+		if (mUpdateDepth == 0) return false;
+
+		mUpdatePending = true;
+		return true;
+	}
+
+	// Recalculate everything which depends on the values shown in the grid
+	private void onValueBoundsChanged() {
+		mContentVersion++;
+
+		// Update labels
+		if(mLeftLabelAdapter != null) setVerticalAdapterValues(mLeftLabelAdapter);
+		if(mRightLabelAdapter != null) setVerticalAdapterValues(mRightLabelAdapter);
+		if(mTopLabelAdapter != null) setHorizontalAdapterValues(mTopLabelAdapter);
+		if(mBottomLabelAdapter!= null) setHorizontalAdapterValues(mBottomLabelAdapter);
+	}
+
+	// Expand the range of the data to take in a point. The range is kept unpadded, so it can be extended any number of
+	// times; setValueBoundsToRange pads it once.
 	private void extendRange(double x, double y) {
 		if (x < mMinX) mMinX = x;
 		if (x > mMaxX) mMaxX = x;
 		if (y < mMinY) mMinY = y;
 		if (y > mMaxY) mMaxY = y;
+	}
+
+	// Show the data's whole range. With no data, the values shown are left as they were.
+	private void setValueBoundsToRange() {
+		if (mMinX > mMaxX) return;
 
 		// Prevent the lines from actually touching the top and bottom of the grid window
-		double yPadding = 0.05*(mMaxY - mMinY);
-		mMinY -= yPadding;
-		mMaxY += yPadding;
+		final double yPadding = 0.05*(mMaxY - mMinY);
+		mValueBounds.set(mMinX, mMinY - yPadding, mMaxX, mMaxY + yPadding);
+	}
+
+	/****
+	 * Pan and zoom
+	 */
 
-		mValueBounds.set(mMinX, mMinY, mMaxX, mMaxY);
+	// Show a viewport which nothing else holds, and which is never changed from now on
+	private void publishViewport(RectD viewport) {
+		mViewport = viewport;
+		mValueBounds.set(viewport);
+		if (deferUpdate()) return;
+
+		onValueBoundsChanged();
+		invalidate();
+	}
+
+	// Move the viewport by a distance in pixels. Positive distances move it right and up, i.e. show higher values.
+	private void panBy(float dx, float dy) {
+		if (mGridBounds.width() <= 0 || mGridBounds.height() <= 0) return;
+
+		// Work on a copy, since the current viewport may be being read on another thread
+		final RectD viewport = new RectD(mViewport != null ? mViewport : mValueBounds);
+		viewport.offset(dx * viewport.width() / mGridBounds.width(), dy * viewport.height() / mGridBounds.height());
+		publishViewport(viewport);
+	}
+
+	// Zoom the viewport in (factor > 1) or out around a point in view co-ordinates
+	private void zoomBy(float factor, float focusX, float focusY) {
+		if (mGridBounds.width() <= 0 || mGridBounds.height() <= 0 || factor <= 0) return;
+
+		final RectD viewport = new RectD(mViewport != null ? mViewport : mValueBounds);
+		final double focusValueX = viewport.left + viewport.width() * (focusX - mGridBounds.left) / mGridBounds.width();
+		final double focusValueY = viewport.top + viewport.height() * (mGridBounds.bottom - focusY) / mGridBounds.height();
+
+		viewport.set(focusValueX - (focusValueX - viewport.left) / factor,
+				focusValueY - (focusValueY - viewport.top) / factor,
+				focusValueX + (viewport.right - focusValueX) / factor,
+				focusValueY + (viewport.bottom - focusValueY) / factor);
+		publishViewport(viewport);
+	}
+
+	private class ViewportGestureListener extends GestureDetector.SimpleOnGestureListener implements ScaleGestureDetector.OnScaleGestureListener {
+		@Override
+		public boolean onDown(MotionEvent e) {
+			mFlingScroller.forceFinished(true);
+			return true;
+		}
+
+		@Override
+		public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+			// Dragging up (positive distanceY) brings lower values into view
+			panBy(distanceX, -distanceY);
+			return true;
+		}
+
+		@Override
+		public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+			mLastFlingX = 0;
+			mLastFlingY = 0;
+			mFlingScroller.fling(0, 0, (int) velocityX, (int) -velocityY,
+					Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			invalidate();
+			return true;
+		}
+
+		@Override
+		public boolean onScale(ScaleGestureDetector detector) {
+			zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+			return true;
+		}
+
+		@Override
+		public boolean onScaleBegin(ScaleGestureDetector detector) {
+			return true;
+		}
+
+		@Override
+		public void onScaleEnd(ScaleGestureDetector detector) {
+		}
+	}
+
+	/****
+	 * Background rendering
+	 */
+
+	// Copy the last finished frame onto the screen, and start rendering a new one if anything has changed since
+	private void drawBackgroundFrame(Canvas canvas, float scaleX, float scaleY) {
+		final long contentKey = getContentKey();
+		if (contentKey != mRenderedContentKey && !mRenderPending && getWidth() > 0 && getHeight() > 0) {
+			mRenderPending = true;
+			mRenderedContentKey = contentKey;
+			if (mRenderExecutor == null) mRenderExecutor = Executors.newSingleThreadExecutor();
+
+			// The render thread gets its own paints, and labels formatted here, rather than reading the label adapters
+			// while this thread changes them
+			final RectD valueBounds = new RectD(mValueBounds);
+			final GridSnapshot grid = new GridSnapshot(new Paint(mPaint), new Paint(mTextPaint));
+			snapshotGridSettings(grid);
+			fillGridSnapshot(grid, valueBounds);
+
+			mRenderExecutor.execute(new RenderTask(mRenderGeneration, getWidth(), getHeight(), new Rect(mGridBounds), valueBounds, scaleX, scaleY,
+					new ArrayList<AbstractSeries>(mSeries), grid, mFrameMetricsListener != null ? mBackgroundFrameMetrics : null));
+		}
+
+		synchronized (mBufferLock) {
+			if (mFrontBuffer != null) canvas.drawBitmap(mFrontBuffer, 0, 0, null);
+		}
+	}
+
+	// Identifies everything that goes into a background frame. Both versions only ever go up, so their sum changes
+	// whenever either does, and never comes back to a value it's had.
+	private long getContentKey() {
+		return mContentVersion + mSeriesContentVersion.get();
+	}
+
+	// A task that's already running isn't stopped by shutdownNow, but once the generation's moved on it recycles its
+	// buffer rather than publishing it
+	private void releaseRenderBuffers() {
+		if (mRenderExecutor != null) {
+			mRenderExecutor.shutdownNow();
+			mRenderExecutor = null;
+		}
+
+		synchronized (mBufferLock) {
+			mRenderGeneration++;
+			if (mFrontBuffer != null) mFrontBuffer.recycle();
+			if (mBackBuffer != null) mBackBuffer.recycle();
+			mFrontBuffer = null;
+			mBackBuffer = null;
+		}
+		mRenderPending = false;
+		mRenderedContentKey = -1;
+	}
+
+	// Draws one frame into the back buffer on the render thread, then swaps it to the front. It works from copies of
+	// the bounds, series list and grid settings and labels, and each series locks itself while it's drawn. If the buffers are released meanwhile,
+	// the task is stale and leaves them released.
+	private class RenderTask implements Runnable {
+		private final int mGeneration;
+		private final int mWidth;
+		private final int mHeight;
+		private final Rect mGridBounds;
+		private final RectD mValueBounds;
+		private final float mScaleX;
+		private final float mScaleY;
+		private final List<AbstractSeries> mSeries;
+		private final GridSnapshot mGrid;
+		private final FrameMetrics mMetrics;
+
+		RenderTask(int generation, int width, int height, Rect gridBounds, RectD valueBounds, float scaleX, float scaleY,
+				List<AbstractSeries> series, GridSnapshot grid, FrameMetrics metrics) {
+			mGeneration = generation;
+			mWidth = width;
+			mHeight = height;
+			mGridBounds = gridBounds;
+			mValueBounds = valueBounds;
+			mScaleX = scaleX;
+			mScaleY = scaleY;
+			mSeries = series;
+			mGrid = grid;
+			mMetrics = metrics;
+		}
+
+		@Override
+		public void run() {
+			Bitmap buffer;
+			synchronized (mBufferLock) {
+				if (mGeneration != mRenderGeneration) return;
+				buffer = mBackBuffer;
+				mBackBuffer = null;
+			}
+			if (buffer == null || buffer.getWidth() != mWidth || buffer.getHeight() != mHeight) {
+				if (buffer != null) buffer.recycle();
+				buffer = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+			} else {
+				buffer.eraseColor(Color.TRANSPARENT);
+			}
+
+			final Canvas canvas = new Canvas(buffer);
+			drawFrame(canvas, mWidth, mHeight, mGridBounds, mValueBounds, mScaleX, mScaleY, mSeries, mGrid, false, mMetrics);
+
+			synchronized (mBufferLock) {
+				if (mGeneration != mRenderGeneration) {
+					buffer.recycle();
+					return;
+				}
+				mBackBuffer = mFrontBuffer;
+				mFrontBuffer = buffer;
+			}
+
+			post(new Runnable() {
+				@Override
+				public void run() {
+					// Released since, in which case a newer task may be pending
+					if (mGeneration != mRenderGeneration) return;
+
+					final OnFrameMetricsListener metricsListener = mFrameMetricsListener;
+					if (mMetrics != null && metricsListener != null) metricsListener.onFrameMetrics(mMetrics);
+
+					mRenderPending = false;
+					invalidate();
+				}
+			});
+		}
+	}
+
+	// Add points posted to any series since the last frame. Each series reports its changes like any other.
+	private void drainPendingPoints() {
+		for (int i = 0; i < mSeries.size(); i++)
+			mSeries.get(i).drainPendingPoints();
+	}
+
+	// Note some CHANGE_ flags, and ask for a frame if something needs one and one hasn't already been asked for
+	private void postSeriesChanges(int changes) {
+		int previous;
+		do {
+			previous = mSeriesChanges.get();
+		} while (!mSeriesChanges.compareAndSet(previous, previous | changes));
+
+		final int wake = CHANGE_REDRAW | CHANGE_POSTED;
+		if ((changes & wake) != 0 && (previous & (wake | CHANGE_DRAWING)) == 0) postInvalidate();
+	}
+
+	// Drain posted points and bring the range up to date with the series changes since the last frame. If every series
+	// has only grown, that's O(1) per series; if any has shrunk, the range is recalculated from scratch.
+	private void applySeriesChanges() {
+		// Clear the flags before draining, so that points posted from here on set them again. While CHANGE_DRAWING is
+		// set, changes don't ask for a frame: those made before the flags are taken again are drawn by this one.
+		int changes = mSeriesChanges.getAndSet(CHANGE_DRAWING);
+		drainPendingPoints();
+		final int drainChanges = mSeriesChanges.getAndSet(0);
+		changes |= drainChanges;
+
+		if ((changes & CHANGE_RESCAN) != 0) resetRange();
+		else if ((changes & CHANGE_EXTEND) != 0) extendRangeToSeries();
+
+		// Points posted after a series was drained are still waiting, and their frame request was held back
+		if ((drainChanges & CHANGE_POSTED) != 0) postInvalidate();
+	}
+
+	// Extend the range to take in any series which has grown beyond it
+	private void extendRangeToSeries() {
+		boolean extended = false;
+		for (int i = 0; i < mSeries.size(); i++) {
+			final AbstractSeries series = mSeries.get(i);
+			if (series.getPointCount() == 0) continue;
+
+			if (series.getMinX() < mMinX || series.getMinY() < mMinY) {
+				extendRange(series.getMinX(), series.getMinY());
+				extended = true;
+			}
+			if (series.getMaxX() > mMaxX || series.getMaxY() > mMaxY) {
+				extendRange(series.getMaxX(), series.getMaxY());
+				extended = true;
+			}
+		}
+
+		if (!extended) return;
+
+		if (mViewport == null) setValueBoundsToRange();
+		onValueBoundsChanged();
+	}
+
+	// Turns series changes into CHANGE_ flags. A change only needs a redraw if it's in view: always, without a
+	// viewport, since the chart then shows all of the data.
+	private class SeriesObserver implements AbstractSeries.Observer {
+		@Override
+		public void onSeriesChanged(AbstractSeries series, double fromX, double toX, boolean rangeShrunk) {
+			mSeriesContentVersion.incrementAndGet();
+
+			int changes = rangeShrunk ? CHANGE_RESCAN : CHANGE_EXTEND;
+
+			final RectD viewport = mViewport;
+			if (viewport == null || series.isChangeVisible(fromX, toX, viewport.left, viewport.right))
+				changes |= CHANGE_REDRAW;
+
+			postSeriesChanges(changes);
+		}
+
+		@Override
+		public void onPointsPosted(AbstractSeries series) {
+			postSeriesChanges(CHANGE_POSTED);
+		}
 	}
 
 	/****
 	 * Drawing methods
 	 */
 
-	// Draw the grid lines
-	private void drawGrid(Canvas canvas, float scaleX, float scaleY) {
+	// Draw the grid, labels and series onto a canvas of the given size, with the grid and canvas labels drawn from grid;
+	// label views are only bound if labelViews is set, since that has to happen on the UI thread. If metrics isn't null,
+	// record what went into it there.
+	private void drawFrame(Canvas canvas, int width, int height, Rect gridBounds, RectD valueBounds, float scaleX, float scaleY,
+			List<AbstractSeries> seriesList, GridSnapshot grid, boolean labelViews, FrameMetrics metrics) {
+		if (metrics == null) {
+			drawGridLayer(canvas, width, height, gridBounds, valueBounds, scaleX, scaleY, grid);
+			if (!grid.mDrawLabelsOnCanvas && labelViews) drawLabels();
+			drawSeries(canvas, seriesList, gridBounds, valueBounds, scaleX, scaleY, null);
+			return;
+		}
+
+		metrics.reset(!labelViews, seriesList.size());
+
+		final long start = System.nanoTime();
+		metrics.mCanvasCalls += drawGridLayer(canvas, width, height, gridBounds, valueBounds, scaleX, scaleY, grid);
+		final long gridEnd = System.nanoTime();
+		if (!grid.mDrawLabelsOnCanvas && labelViews) drawLabels();
+		final long labelsEnd = System.nanoTime();
+		drawSeries(canvas, seriesList, gridBounds, valueBounds, scaleX, scaleY, metrics);
+		final long end = System.nanoTime();
+
+		metrics.mFrameNanos = end - start;
+		metrics.mGridNanos = gridEnd - start;
+		metrics.mLabelNanos = labelsEnd - gridEnd;
+		metrics.mSeriesNanos = end - labelsEnd;
+		metrics.mLabelCacheHits = grid.mLabelCacheHits;
+		metrics.mLabelCacheMisses = grid.mLabelCacheMisses;
+	}
+
+	// Total label cache hits (or misses) so far across the label adapters, counting an adapter used on two sides once
+	private long countLabelCache(boolean hits) {
+		long count = 0;
+		for (int i = 0; i < 4; i++) {
+			final LabelAdapter adapter = getLabelAdapter(i);
+			if (adapter == null) continue;
+
+			boolean counted = false;
+			for (int j = 0; j < i; j++)
+				counted |= getLabelAdapter(j) == adapter;
+			if (!counted) count += hits ? adapter.getCacheHits() : adapter.getCacheMisses();
+		}
+		return count;
+	}
+
+	// The label adapter on a side: 0 is left, 1 top, 2 right and 3 bottom
+	private LabelAdapter getLabelAdapter(int side) {
+		switch (side) {
+			case 0: return mLeftLabelAdapter;
+			case 1: return mTopLabelAdapter;
+			case 2: return mRightLabelAdapter;
+			default: return mBottomLabelAdapter;
+		}
+	}
+
+	// Draw the grid and any labels drawn on the canvas, from the grid layer if it's up to date. Returns the number of
+	// Canvas calls made, including those to redraw the layer.
+	private int drawGridLayer(Canvas canvas, int width, int height, Rect gridBounds, RectD valueBounds, float scaleX, float scaleY,
+			GridSnapshot grid) {
+		if (!mCacheGrid || width <= 0 || height <= 0) {
+			if (!grid.mFilled) fillGridSnapshot(grid, valueBounds);
+			int calls = drawGrid(canvas, gridBounds, valueBounds, scaleX, scaleY, grid);
+			if (grid.mDrawLabelsOnCanvas) calls += drawCanvasLabels(canvas, gridBounds, grid);
+			return calls;
+		}
+
+		// The UI and render threads never draw at once in practice, but might either side of setRenderInBackground
+		synchronized (mGridLayerLock) {
+			int calls = 1;
+			if (!isGridLayerValid(width, height, gridBounds, valueBounds, grid)) {
+				if (!grid.mFilled) fillGridSnapshot(grid, valueBounds);
+
+				// Note what the layer is drawn from first, so that a change while it's drawn means it's redrawn next time
+				mGridLayerGridBounds.set(gridBounds);
+				mGridLayerValueBounds.set(valueBounds);
+				mGridLayerVersion = grid.mVersion;
+				for (int i = 0; i < 4; i++) {
+					mGridLayerAdapters[i] = grid.mAdapters[i];
+					mGridLayerAdapterVersions[i] = grid.mAdapterVersions[i];
+				}
+
+				if (mGridLayer == null || mGridLayer.getWidth() != width || mGridLayer.getHeight() != height) {
+					if (mGridLayer != null) mGridLayer.recycle();
+					mGridLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+					mGridLayerCanvas = new Canvas(mGridLayer);
+				} else {
+					mGridLayer.eraseColor(Color.TRANSPARENT);
+				}
+
+				calls += drawGrid(mGridLayerCanvas, gridBounds, valueBounds, scaleX, scaleY, grid);
+				if (grid.mDrawLabelsOnCanvas) calls += drawCanvasLabels(mGridLayerCanvas, gridBounds, grid);
+			}
+
+			canvas.drawBitmap(mGridLayer, 0, 0, null);
+			return calls;
+		}
+	}
+
+	// Whether the grid layer was drawn at this size, from these bounds and the grid and label settings in grid
+	private boolean isGridLayerValid(int width, int height, Rect gridBounds, RectD valueBounds, GridSnapshot grid) {
+		if (mGridLayer == null || mGridLayer.getWidth() != width || mGridLayer.getHeight() != height
+				|| mGridLayerVersion != grid.mVersion
+				|| !mGridLayerGridBounds.equals(gridBounds) || !mGridLayerValueBounds.equals(valueBounds))
+			return false;
+
+		for (int i = 0; i < 4; i++) {
+			if (grid.mAdapters[i] != mGridLayerAdapters[i]) return false;
+			if (grid.mAdapterVersions[i] != mGridLayerAdapterVersions[i]) return false;
+		}
+		return true;
+	}
+
+	private void releaseGridLayer() {
+		synchronized (mGridLayerLock) {
+			if (mGridLayer != null) mGridLayer.recycle();
+			mGridLayer = null;
+			mGridLayerCanvas = null;
+			for (int i = 0; i < 4; i++)
+				mGridLayerAdapters[i] = null;
+		}
+	}
+
+	// Draw the grid lines. Like the other drawing methods, returns the number of Canvas calls made.
+	private int drawGrid(Canvas canvas, Rect gridBounds, RectD valueBounds, float scaleX, float scaleY, GridSnapshot grid) {
+		int calls = 0;
+
 		// Draw the x-grid (i.e. vertical lines)
-		if(mGridFixedXGap > 0) drawGridFixedGap(canvas, Axis.X, scaleX);
-		else drawGridFixedEnds(canvas, Axis.X, scaleX);
+		if(grid.mFixedXGap > 0) calls += drawGridFixedGap(canvas, gridBounds, valueBounds, Axis.X, scaleX, grid);
+		else calls += drawGridFixedEnds(canvas, gridBounds, Axis.X, grid);
 
 		// Draw the y-grid (i.e. horizontal lines)
-		if(mGridFixedYGap > 0) drawGridFixedGap(canvas, Axis.Y, scaleY);
-		else drawGridFixedEnds(canvas, Axis.Y, scaleY);
-	}
+		if(grid.mFixedYGap > 0) calls += drawGridFixedGap(canvas, gridBounds, valueBounds, Axis.Y, scaleY, grid);
+		else calls += drawGridFixedEnds(canvas, gridBounds, Axis.Y, grid);
 
-	// Draw a grid with lines at every point which == 0 modulo a fixed gap
-	private void drawGridFixedGap(Canvas canvas, Axis axis, float scale) {
-		mPaint.setColor(mGridLineColor);
-		mPaint.setStrokeWidth(mGridLineWidth);
+		return calls;
+	}
 
-		final int step = axis == Axis.X ? mGridFixedXGap : mGridFixedYGap;
-		final double minPoint = axis == Axis.X ? mValueBounds.left : mValueBounds.top;
-		final double maxPoint = axis == Axis.X ? mValueBounds.right : mValueBounds.bottom;
+	// Draw a grid with lines at every point which == 0 modulo a fixed gap, i.e. at the snapshot's ticks
+	private int drawGridFixedGap(Canvas canvas, Rect gridBounds, RectD valueBounds, Axis axis, float scale, GridSnapshot grid) {
+		final Paint paint = grid.mPaint;
+		paint.setColor(grid.mLineColor);
+		paint.setStrokeWidth(grid.mLineWidth);
 
-		Double pointCoord;
-		final int originPointCoord = axis == Axis.X ? mGridBounds.left : mGridBounds.top;
+		final double minPoint = axis == Axis.X ? valueBounds.left : valueBounds.top;
+		final double[] ticks = axis == Axis.X ? grid.mXTicks : grid.mYTicks;
+		final int tickCount = axis == Axis.X ? grid.mXTickCount : grid.mYTickCount;
 
-		Log.d(TAG, "Drawing fixed-gap lines between "+minPoint+" and "+maxPoint+" in steps of "+step);
+		float pointCoord;
+		final int originPointCoord = axis == Axis.X ? gridBounds.left : gridBounds.top;
 
 		// Enclose the grid on both sides for neatness
 		if(axis == Axis.X) {
-			canvas.drawLine(mGridBounds.left, mGridBounds.top, mGridBounds.left, mGridBounds.bottom, mPaint);
-			canvas.drawLine(mGridBounds.right, mGridBounds.top, mGridBounds.right, mGridBounds.bottom, mPaint);
+			canvas.drawLine(gridBounds.left, gridBounds.top, gridBounds.left, gridBounds.bottom, paint);
+			canvas.drawLine(gridBounds.right, gridBounds.top, gridBounds.right, gridBounds.bottom, paint);
 		} else {
-			canvas.drawLine(mGridBounds.left, mGridBounds.top, mGridBounds.right, mGridBounds.top, mPaint);
-			canvas.drawLine(mGridBounds.left, mGridBounds.bottom, mGridBounds.right, mGridBounds.bottom, mPaint);
+			canvas.drawLine(gridBounds.left, gridBounds.top, gridBounds.right, gridBounds.top, paint);
+			canvas.drawLine(gridBounds.left, gridBounds.bottom, gridBounds.right, gridBounds.bottom, paint);
 		}
+		int calls = 2;
 
-		int drawn = 0;
-		for(double point = minPoint % step == 0 ? minPoint : // The left bound magically should be a grid line!
-				minPoint + (step - (minPoint % step)); // Move to the first grid line
-					point <= maxPoint && drawn < 50; // Go right up to the maximum point, but because this comparison isn't 100% reliable, draw at most 50 lines
-					point += step, drawn++ // Move along by the specified amount each time
-				) {
+		for (int i = 0; i < tickCount; i++) {
 			// Get the drawing co-ordinate for this line: get the distance it should be in value from the left, scale
 			// that to the drawing distance, and move it away from the origin co-ordinate
-			pointCoord = originPointCoord + (scale * (point - minPoint));
-
-			Log.v(TAG, "Drawing fixed-gap "+(axis == Axis.X ? "vertical" : "horizontal")+" line at value "+point+", drawing co-ordinate "+pointCoord);
+			pointCoord = (float) (originPointCoord + (scale * (ticks[i] - minPoint)));
 
 			if(axis == Axis.X) {
 				// Draw a vertical line at this x value
-				canvas.drawLine(pointCoord.floatValue(), mGridBounds.top, pointCoord.floatValue(), mGridBounds.bottom, mPaint);
+				canvas.drawLine(pointCoord, gridBounds.top, pointCoord, gridBounds.bottom, paint);
+				calls++;
 				// And the text label
-				if(mBottomLabelAdapter != null)
-					canvas.drawText(mBottomLabelAdapter.getLabel(point),
-							pointCoord.floatValue(), // centre of the text below the grid line
-							mGridBounds.bottom+mLabelTextSize, // right below the grid line
-							mTextPaint);
-				if(mTopLabelAdapter != null)
-					canvas.drawText(mTopLabelAdapter.getLabel(point),
-							pointCoord.floatValue(), // centre of the text above the grid line
+				if(grid.mLabelCounts[SIDE_BOTTOM] > 0) {
+					calls++;
+					canvas.drawText(grid.mLabels[SIDE_BOTTOM][i],
+							pointCoord, // centre of the text below the grid line
+							gridBounds.bottom+mLabelTextSize, // right below the grid line
+							grid.mTextPaint);
+				}
+				if(grid.mLabelCounts[SIDE_TOP] > 0) {
+					calls++;
+					canvas.drawText(grid.mLabels[SIDE_TOP][i],
+							pointCoord, // centre of the text above the grid line
 							mLabelTextSize, // put it right at the top of the view
-							mTextPaint);
+							grid.mTextPaint);
+				}
 			} else {
 				// Draw a horizontal line at this y-value
-				canvas.drawLine(mGridBounds.left, pointCoord.floatValue(), mGridBounds.right, pointCoord.floatValue(), mPaint);
+				canvas.drawLine(gridBounds.left, pointCoord, gridBounds.right, pointCoord, paint);
+				calls++;
 				// And the text label
-				if(mLeftLabelAdapter != null)
-					canvas.drawText(mLeftLabelAdapter.getLabel(point),
+				if(grid.mLabelCounts[SIDE_LEFT] > 0) {
+					calls++;
+					canvas.drawText(grid.mLabels[SIDE_LEFT][i],
 							mLeftLabelWidth/2, // centre it in the left label gutter
-							pointCoord.floatValue()+(mLabelTextSize/2), // since the text is drawn from the middle-bottom we need to push it down a little more
-							mTextPaint);
-				if(mTopLabelAdapter != null)
-					canvas.drawText(mTopLabelAdapter.getLabel(point),
-							mGridBounds.right+(mRightLabelWidth/2), // centre it in the right label gutter
-							pointCoord.floatValue()+(mLabelTextSize/2), // centre of the text next to the line
-							mTextPaint);
+							pointCoord+(mLabelTextSize/2), // since the text is drawn from the middle-bottom we need to push it down a little more
+							grid.mTextPaint);
+				}
+				if(grid.mLabelCounts[SIDE_RIGHT] > 0) {
+					calls++;
+					canvas.drawText(grid.mLabels[SIDE_RIGHT][i],
+							gridBounds.right+(mRightLabelWidth/2), // centre it in the right label gutter
+							pointCoord+(mLabelTextSize/2), // centre of the text next to the line
+							grid.mTextPaint);
+				}
 			}
 		}
+		return calls;
 	}
 
 	// Draw a grid with lines at each end and a fixed number of them in between
-	private void drawGridFixedEnds(Canvas canvas, Axis axis, float scale) {
-		mPaint.setColor(mGridLineColor);
-		mPaint.setStrokeWidth(mGridLineWidth);
+	private int drawGridFixedEnds(Canvas canvas, Rect gridBounds, Axis axis, GridSnapshot grid) {
+		final Paint paint = grid.mPaint;
+		paint.setColor(grid.mLineColor);
+		paint.setStrokeWidth(grid.mLineWidth);
 
 		final float step = axis == Axis.X ?
-				mGridBounds.width() / (float) (mGridLinesHorizontal + 1) : //
-				mGridBounds.height() / (float) (mGridLinesVertical + 1);
+				gridBounds.width() / (float) (grid.mLinesHorizontal + 1) : //
+				gridBounds.height() / (float) (grid.mLinesVertical + 1);
 
-		final float left = mGridBounds.left;
-		final float top = mGridBounds.top;
-		final float bottom = mGridBounds.bottom;
-		final float right = mGridBounds.right;
+		final float left = gridBounds.left;
+		final float top = gridBounds.top;
+		final float bottom = gridBounds.bottom;
+		final float right = gridBounds.right;
 
 		if(axis == Axis.X)
-			for (int i = 0; i < mGridLinesHorizontal + 2; i++) {
-				Log.v(TAG, "Drawing vertical line at "+(((step*i)/scale)+mValueBounds.left));
-				canvas.drawLine(left + (step * i), top, left + (step * i), bottom, mPaint);
-			}
+			for (int i = 0; i < grid.mLinesHorizontal + 2; i++)
+				canvas.drawLine(left + (step * i), top, left + (step * i), bottom, paint);
 		else
-			for (int i = 0; i < mGridLinesVertical + 2; i++) {
-				Log.v(TAG, "Drawing horizontal line at "+(((step*i)/scale)+mValueBounds.top));
-				canvas.drawLine(left, top + (step * i), right, top + (step * i), mPaint);
-			}
+			for (int i = 0; i < grid.mLinesVertical + 2; i++)
+				canvas.drawLine(left, top + (step * i), right, top + (step * i), paint);
+
+		return axis == Axis.X ? grid.mLinesHorizontal + 2 : grid.mLinesVertical + 2;
+	}
+
+	// Draw the series, clipped to the grid when only part of the data is in view
+	private void drawSeries(Canvas canvas, List<AbstractSeries> seriesList, Rect gridBounds, RectD valueBounds, float scaleX, float scaleY,
+			FrameMetrics metrics) {
+		if (mParallelProjection) ParallelProjector.getInstance().project(seriesList, gridBounds, valueBounds, scaleX, scaleY);
+
+		final boolean clip = mViewport != null;
+		final int saveCount = clip ? canvas.save() : 0;
+		if (clip) canvas.clipRect(gridBounds);
+
+		// Indexed rather than for-each so that drawing a frame doesn't allocate an iterator
+		for (int i = 0; i < seriesList.size(); i++) {
+			final AbstractSeries series = seriesList.get(i);
+			series.draw(canvas, gridBounds, valueBounds, scaleX, scaleY);
+			if (metrics != null) metrics.recordSeries(i, series);
+		}
+
+		if (clip) canvas.restoreToCount(saveCount);
 	}
 
 	// Draw all labels
 	private void drawLabels() {
 		if (mLeftLabelAdapter != null)
-			drawLabels(mLeftLabelAdapter, mLeftLabelLayout, true);
+			mLeftLabelsVersion = drawLabels(mLeftLabelAdapter, mLeftLabelLayout, true, mLeftLabelsVersion);
 
 		if (mTopLabelAdapter != null)
-			drawLabels(mTopLabelAdapter, mTopLabelLayout, false);
+			mTopLabelsVersion = drawLabels(mTopLabelAdapter, mTopLabelLayout, false, mTopLabelsVersion);
 
 		if (mRightLabelAdapter != null)
-			drawLabels(mRightLabelAdapter, mRightLabelLayout, true);
+			mRightLabelsVersion = drawLabels(mRightLabelAdapter, mRightLabelLayout, true, mRightLabelsVersion);
 
 		if (mBottomLabelAdapter != null)
-			drawLabels(mBottomLabelAdapter, mBottomLabelLayout, false);
+			mBottomLabelsVersion = drawLabels(mBottomLabelAdapter, mBottomLabelLayout, false, mBottomLabelsVersion);
 	}
 
-	// Label drawing for a specific axis
-	private void drawLabels(LabelAdapter labelAdapter, LinearLayout labelLayout, boolean isSide) {
+	// Label drawing for a specific axis. The views are only rebound if the adapter has changed since boundVersion;
+	// returns the version they're now bound to.
+	private int drawLabels(LabelAdapter labelAdapter, LinearLayout labelLayout, boolean isSide, int boundVersion) {
+		final int version = labelAdapter.getVersion();
+		if (version == boundVersion) return version;
+
 		// Add views from adapter
 		final int labelCount = labelAdapter.getCount();
 		int i;
@@ -497,6 +1347,230 @@ public class ChartView extends RelativeLayout {
 		// Remove extra views
 		while(i < labelLayout.getChildCount())
 			labelLayout.removeViewAt(i);
+
+		return version;
+	}
+
+	// Draw the labels for grids with a fixed number of lines as text at each line. (Fixed-gap grids draw their own.)
+	private int drawCanvasLabels(Canvas canvas, Rect gridBounds, GridSnapshot grid) {
+		int calls = 0;
+		if (grid.mFixedXGap <= 0) {
+			calls += drawHorizontalCanvasLabels(canvas, gridBounds, grid, SIDE_BOTTOM, gridBounds.bottom + mLabelTextSize);
+			calls += drawHorizontalCanvasLabels(canvas, gridBounds, grid, SIDE_TOP, mLabelTextSize);
+		}
+
+		if (grid.mFixedYGap <= 0) {
+			calls += drawVerticalCanvasLabels(canvas, gridBounds, grid, SIDE_LEFT, mLeftLabelWidth / 2f);
+			calls += drawVerticalCanvasLabels(canvas, gridBounds, grid, SIDE_RIGHT, gridBounds.right + (mRightLabelWidth / 2f));
+		}
+		return calls;
+	}
+
+	// Labels along the top or bottom, left to right, with the end ones pulled in to stay over the grid
+	private int drawHorizontalCanvasLabels(Canvas canvas, Rect gridBounds, GridSnapshot grid, int side, float y) {
+		final int labelCount = grid.mLabelCounts[side];
+		if (labelCount < 2) return 0;
+
+		final String[] labels = grid.mLabels[side];
+		final float[] widths = grid.mLabelWidths[side];
+		final float step = gridBounds.width() / (float) (labelCount - 1);
+		for (int i = 0; i < labelCount; i++) {
+			final float halfWidth = widths[i] / 2;
+			final float x = Math.max(gridBounds.left + halfWidth, Math.min(gridBounds.left + (step * i), gridBounds.right - halfWidth));
+			canvas.drawText(labels[i], x, y, grid.mTextPaint);
+		}
+		return labelCount;
+	}
+
+	// Labels down the left or right, lowest value at the bottom, with the end ones pulled in to stay beside the grid
+	private int drawVerticalCanvasLabels(Canvas canvas, Rect gridBounds, GridSnapshot grid, int side, float x) {
+		final int labelCount = grid.mLabelCounts[side];
+		if (labelCount < 2) return 0;
+
+		final String[] labels = grid.mLabels[side];
+		final float step = gridBounds.height() / (float) (labelCount - 1);
+		for (int i = 0; i < labelCount; i++) {
+			// Text is drawn up from its baseline, so push it down by half its height to centre it on the line
+			final float y = Math.max(gridBounds.top + mLabelTextSize, Math.min(gridBounds.bottom - (step * i) + (mLabelTextSize / 2), gridBounds.bottom));
+			canvas.drawText(labels[i], x, y, grid.mTextPaint);
+		}
+		return labelCount;
+	}
+
+	/****
+	 * Grid snapshots, taken on the UI thread
+	 */
+
+	// Copy the grid settings and label adapters' versions into a snapshot, leaving its ticks and labels to be filled in
+	private void snapshotGridSettings(GridSnapshot grid) {
+		grid.mVersion = mGridVersion;
+		grid.mLineColor = mGridLineColor;
+		grid.mLineWidth = mGridLineWidth;
+		grid.mLinesHorizontal = mGridLinesHorizontal;
+		grid.mLinesVertical = mGridLinesVertical;
+		grid.mFixedXGap = mGridFixedXGap;
+		grid.mFixedYGap = mGridFixedYGap;
+		grid.mDrawLabelsOnCanvas = mDrawLabelsOnCanvas;
+		for (int side = 0; side < 4; side++) {
+			final LabelAdapter adapter = getLabelAdapter(side);
+			grid.mAdapters[side] = adapter;
+			grid.mAdapterVersions[side] = adapter != null ? adapter.getVersion() : 0;
+		}
+
+		grid.mFilled = false;
+		grid.mLabelCacheHits = 0;
+		grid.mLabelCacheMisses = 0;
+	}
+
+	// Work out where a fixed-gap grid's lines go, and format (and measure) every label drawn on the canvas
+	private void fillGridSnapshot(GridSnapshot grid, RectD valueBounds) {
+		final long labelCacheHits = countLabelCache(true);
+		final long labelCacheMisses = countLabelCache(false);
+
+		grid.mXTickCount = grid.mFixedXGap > 0 ? fillTicks(grid.mXTicks, grid.mFixedXGap, valueBounds.left, valueBounds.right) : 0;
+		grid.mYTickCount = grid.mFixedYGap > 0 ? fillTicks(grid.mYTicks, grid.mFixedYGap, valueBounds.top, valueBounds.bottom) : 0;
+		for (int side = 0; side < 4; side++)
+			fillLabels(grid, side);
+
+		grid.mLabelCacheHits = (int) (countLabelCache(true) - labelCacheHits);
+		grid.mLabelCacheMisses = (int) (countLabelCache(false) - labelCacheMisses);
+		grid.mFilled = true;
+	}
+
+	// The multiples of step from minPoint to maxPoint, returning how many there are
+	private static int fillTicks(double[] ticks, int step, double minPoint, double maxPoint) {
+		int count = 0;
+		for(double point = Ticks.firstMultiple(minPoint, step); // Start at the first grid line
+					point <= maxPoint && count < MAX_FIXED_GAP_LINES; // Go right up to the maximum point, but because this comparison isn't 100% reliable, draw at most 50 lines
+					point += step // Move along by the specified amount each time
+				)
+			ticks[count++] = point;
+		return count;
+	}
+
+	// The labels a side draws on the canvas: one for each tick of a fixed-gap grid, or for each of the adapter's values
+	// if labels are drawn on the canvas. Labels along the top and bottom are measured too, to keep the end ones in.
+	private void fillLabels(GridSnapshot grid, int side) {
+		final LabelAdapter adapter = grid.mAdapters[side];
+		final boolean horizontal = side == SIDE_TOP || side == SIDE_BOTTOM;
+		final boolean fixedGap = (horizontal ? grid.mFixedXGap : grid.mFixedYGap) > 0;
+
+		int count = 0;
+		if (adapter != null && fixedGap) count = horizontal ? grid.mXTickCount : grid.mYTickCount;
+		else if (adapter != null && grid.mDrawLabelsOnCanvas) count = adapter.getCount();
+		grid.mLabelCounts[side] = count;
+		if (count == 0) return;
+
+		if (grid.mLabels[side].length < count) {
+			grid.mLabels[side] = new String[count];
+			grid.mLabelWidths[side] = new float[count];
+		}
+
+		final double[] ticks = horizontal ? grid.mXTicks : grid.mYTicks;
+		for (int i = 0; i < count; i++) {
+			final String label = adapter.getFormattedLabel(fixedGap ? ticks[i] : adapter.getValue(i));
+			grid.mLabels[side][i] = label;
+			if (horizontal && !fixedGap) grid.mLabelWidths[side][i] = measureLabel(label);
+		}
+	}
+
+	// The width of a label in the label text paint, remembered since the same labels tend to be drawn every frame. Only
+	// used on the UI thread, as snapshots are filled.
+	private float measureLabel(String label) {
+		Float width = mLabelWidths.get(label);
+		if (width == null) {
+			if (mLabelWidths.size() >= 256) mLabelWidths.clear();
+			width = mTextPaint.measureText(label);
+			mLabelWidths.put(label, width);
+		}
+		return width;
+	}
+
+	// Everything drawing the grid and the labels on the canvas reads besides the bounds: the grid settings, ticks and
+	// label text, with the paints to draw them in. The drawing methods only read a snapshot, which is filled on the UI
+	// thread, so a frame rendered in the background draws from its own copy, just as it does the bounds and series.
+	private static final class GridSnapshot {
+		// The chart's own paints on the UI thread, and copies of them for a render task
+		final Paint mPaint;
+		final Paint mTextPaint;
+
+		int mVersion;
+		int mLineColor;
+		int mLineWidth;
+		int mLinesHorizontal;
+		int mLinesVertical;
+		int mFixedXGap;
+		int mFixedYGap;
+		boolean mDrawLabelsOnCanvas;
+
+		// By side. The adapters are only compared with the grid layer's, never called, off the UI thread.
+		final LabelAdapter[] mAdapters = new LabelAdapter[4];
+		final int[] mAdapterVersions = new int[4];
+
+		// Whether the ticks and labels below have been filled in since the settings were copied
+		boolean mFilled;
+		final double[] mXTicks = new double[MAX_FIXED_GAP_LINES];
+		final double[] mYTicks = new double[MAX_FIXED_GAP_LINES];
+		int mXTickCount;
+		int mYTickCount;
+		final String[][] mLabels = { NO_LABELS, NO_LABELS, NO_LABELS, NO_LABELS };
+		final float[][] mLabelWidths = { NO_LABEL_WIDTHS, NO_LABEL_WIDTHS, NO_LABEL_WIDTHS, NO_LABEL_WIDTHS };
+		final int[] mLabelCounts = new int[4];
+
+		// Label cache hits and misses while the labels were filled in
+		int mLabelCacheHits;
+		int mLabelCacheMisses;
+
+		GridSnapshot(Paint paint, Paint textPaint) {
+			mPaint = paint;
+			mTextPaint = textPaint;
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public interface OnFrameMetricsListener {
+		// Called on the UI thread after each frame is drawn (or rendered, when rendering in the background)
+		void onFrameMetrics(FrameMetrics metrics);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// The chart's saved state: the paths of the series' snapshot files, by position (null for a series which wasn't
+	// saved). Package-private rather than private so that its CREATOR can be found when it's unparcelled.
+	static class SavedState extends BaseSavedState {
+		private String[] mSnapshots;
+
+		SavedState(Parcelable superState) {
+			super(superState);
+		}
+
+		private SavedState(Parcel in) {
+			super(in);
+			mSnapshots = in.createStringArray();
+		}
+
+		@Override
+		public void writeToParcel(Parcel out, int flags) {
+			super.writeToParcel(out, flags);
+			out.writeStringArray(mSnapshots);
+		}
+
+		public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+			@Override
+			public SavedState createFromParcel(Parcel in) {
+				return new SavedState(in);
+			}
+
+			@Override
+			public SavedState[] newArray(int size) {
+				return new SavedState[size];
+			}
+		};
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package com.fima.chartview;
+
+// What went into drawing one frame of a ChartView, passed to its OnFrameMetricsListener. The chart reuses the same
+// instance for every frame, so copy out anything you want to keep.
+public class FrameMetrics {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private boolean mBackground;
+
+	// Times
+	long mFrameNanos;
+	long mGridNanos;
+	long mLabelNanos;
+	long mSeriesNanos;
+
+	int mCanvasCalls;
+
+	// Per series, in the order they were added to the chart
+	private int mSeriesCount;
+	private int[] mPointsVisited = new int[0];
+	private int[] mPointsDrawn = new int[0];
+
+	// Caches
+	int mProjectionCacheHits;
+	int mProjectionCacheMisses;
+	int mLabelCacheHits;
+	int mLabelCacheMisses;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Whether this frame was rendered on the background thread (see ChartView.setRenderInBackground)
+	public boolean isBackgroundFrame() {
+		return mBackground;
+	}
+
+	// Time taken to draw the whole frame, in nanoseconds
+	public long getFrameNanos() {
+		return mFrameNanos;
+	}
+
+	// Time taken to draw the grid layer, or just copy it if nothing it shows has changed
+	public long getGridNanos() {
+		return mGridNanos;
+	}
+
+	// Time taken to bind label views. Labels drawn on the canvas are part of the grid layer, so count towards grid time.
+	public long getLabelNanos() {
+		return mLabelNanos;
+	}
+
+	public long getSeriesNanos() {
+		return mSeriesNanos;
+	}
+
+	// Number of draw calls made on the Canvas for the grid, labels and series
+	public int getCanvasCalls() {
+		return mCanvasCalls;
+	}
+
+	public int getSeriesCount() {
+		return mSeriesCount;
+	}
+
+	// Number of stored points a series looked at: those in view, plus one either side
+	public int getPointsVisited(int series) {
+		return mPointsVisited[series];
+	}
+
+	// Number of points a series actually drew, after any decimation
+	public int getPointsDrawn(int series) {
+		return mPointsDrawn[series];
+	}
+
+	// Series which reused their previous frame's projection, and those which had to project their points again
+	public int getProjectionCacheHits() {
+		return mProjectionCacheHits;
+	}
+
+	public int getProjectionCacheMisses() {
+		return mProjectionCacheMisses;
+	}
+
+	// Labels found in the label adapters' caches, and those which had to be formatted by getLabel
+	public int getLabelCacheHits() {
+		return mLabelCacheHits;
+	}
+
+	public int getLabelCacheMisses() {
+		return mLabelCacheMisses;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Clear everything for a new frame of this many series
+	void reset(boolean background, int seriesCount) {
+		mBackground = background;
+		mFrameNanos = mGridNanos = mLabelNanos = mSeriesNanos = 0;
+		mCanvasCalls = 0;
+		mProjectionCacheHits = mProjectionCacheMisses = 0;
+		mLabelCacheHits = mLabelCacheMisses = 0;
+
+		mSeriesCount = seriesCount;
+		if (mPointsVisited.length < seriesCount) {
+			mPointsVisited = new int[seriesCount];
+			mPointsDrawn = new int[seriesCount];
+		}
+	}
+
+	// Record what the last draw of a series did
+	void recordSeries(int index, AbstractSeries series) {
+		mPointsVisited[index] = series.mLastPointsVisited;
+		mPointsDrawn[index] = series.mLastPointsDrawn;
+		mCanvasCalls += series.mLastCanvasCalls;
+		if (series.mLastProjectionCached) mProjectionCacheHits++;
+		else mProjectionCacheMisses++;
+	}
+}
@@ -1,12 +1,102 @@
 package com.fima.chartview;
 
+import java.util.Arrays;
+
 import android.widget.BaseAdapter;
 
 public abstract class LabelAdapter extends BaseAdapter {
-	private Double[] mValues;
+	private double[] mValues = new double[0];
+	private int mVersion; // bumped whenever the labels might have changed
+
+	// Labels already formatted by getLabel, in a set-associative table with room for every label a frame can draw (at
+	// most 50 lines each way, on all four sides) several times over. Each value belongs to one set of LABEL_CACHE_WAYS
+	// slots, and a new value replaces the set's least recently used label. A slot is only valid if it was filled since
+	// the last notifyDataSetChanged.
+	private static final int LABEL_CACHE_SETS = 8;
+	private static final int LABEL_CACHE_WAYS = 32;
+	private long[] mCachedValues;
+	private String[] mCachedLabels;
+	private int[] mCachedFormats;
+	private long[] mCachedUses; // the mUses count when each slot was last used
+	private long mUses;
+	private int mFormat = 1;
+	private long mCacheHits;
+	private long mCacheMisses;
 
-	void setValues(Double[] points) {
+	void setValues(double[] points) {
+		if (Arrays.equals(mValues, points)) return;
 		mValues = points;
+		mVersion++;
+	}
+
+	int getVersion() {
+		return mVersion;
+	}
+
+	@Override
+	public void notifyDataSetChanged() {
+		mVersion++;
+		synchronized (this) {
+			mFormat++;
+		}
+		super.notifyDataSetChanged();
+	}
+
+	// getLabel, remembering recent results so that drawing the same values every frame doesn't format them again
+	public final synchronized String getFormattedLabel(double value) {
+		if (mCachedLabels == null) {
+			mCachedValues = new long[LABEL_CACHE_SETS * LABEL_CACHE_WAYS];
+			mCachedLabels = new String[LABEL_CACHE_SETS * LABEL_CACHE_WAYS];
+			mCachedFormats = new int[LABEL_CACHE_SETS * LABEL_CACHE_WAYS];
+			mCachedUses = new long[LABEL_CACHE_SETS * LABEL_CACHE_WAYS];
+		}
+
+		final long bits = Double.doubleToLongBits(value);
+		final int first = getCacheSet(bits) * LABEL_CACHE_WAYS;
+		int victim = first;
+		long victimUse = Long.MAX_VALUE;
+		for (int slot = first; slot < first + LABEL_CACHE_WAYS; slot++) {
+			final boolean valid = mCachedFormats[slot] == mFormat;
+			if (valid && mCachedValues[slot] == bits) {
+				mCachedUses[slot] = ++mUses;
+				mCacheHits++;
+				return mCachedLabels[slot];
+			}
+
+			// Replace an invalid slot if there is one, otherwise the least recently used
+			final long use = valid ? mCachedUses[slot] : -1;
+			if (use < victimUse) {
+				victim = slot;
+				victimUse = use;
+			}
+		}
+
+		mCachedValues[victim] = bits;
+		mCachedLabels[victim] = getLabel(value);
+		mCachedFormats[victim] = mFormat;
+		mCachedUses[victim] = ++mUses;
+		mCacheMisses++;
+		return mCachedLabels[victim];
+	}
+
+	// The set a value's label is cached in. Every bit of the value (sign, exponent and mantissa) is mixed in, so that
+	// tick values such as x and -x, or values a power of two apart, are no likelier to share a set than any others.
+	private static int getCacheSet(long bits) {
+		bits ^= bits >>> 33;
+		bits *= 0xff51afd7ed558ccdL;
+		bits ^= bits >>> 33;
+		bits *= 0xc4ceb9fe1a85ec53L;
+		bits ^= bits >>> 33;
+		return (int) bits & (LABEL_CACHE_SETS - 1);
+	}
+
+	// Running totals of getFormattedLabel calls which did and didn't find the label cached
+	synchronized long getCacheHits() {
+		return mCacheHits;
+	}
+
+	synchronized long getCacheMisses() {
+		return mCacheMisses;
 	}
 
 	@Override
@@ -14,6 +104,12 @@ public abstract class LabelAdapter extends BaseAdapter {
 		return mValues.length;
 	}
 
+	// The value labelled at this position
+	public double getValue(int position) {
+		return mValues[position];
+	}
+
+	// The same as getValue, but boxed
 	public Double getItem(int position) {
 		return mValues[position];
 	}
@@ -1,31 +1,206 @@
 package com.fima.chartview;
 
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.PointF;
 import android.graphics.Rect;
 
 public class LinearSeries extends AbstractSeries {
-    private PointF mLastPoint;
+    public enum Decimation {
+        // Draw every point
+        NONE,
+        // Keep the first, lowest, highest and last point in each pixel column; draws an identical line
+        MIN_MAX,
+        // Largest-triangle-three-buckets: keep about two points per pixel which best preserve the line's shape
+        LTTB
+    }
+
+    private final PointF mLastPoint = new PointF();
+    private boolean mHasLastPoint;
+
+    private Decimation mDecimation = Decimation.NONE;
+    private final Decimator mDecimator = new Decimator();
+
+    // Line segments for the whole visible range, for a single Canvas.drawLines call
+    private final LineProjector mProjector = new LineProjector();
+
+    // What mProjector's lines were projected from. It's only rebuilt when one of these changes
+    private int mCachedVersion = -1;
+    private final Rect mCachedGridBounds = new Rect();
+    private float mCachedScaleX;
+    private float mCachedScaleY;
+    private double mCachedOriginX;
+    private double mCachedOriginY;
+    private Decimation mCachedDecimation;
+
+    // Set when ParallelProjector has projected this frame ahead of drawRange, which then only has to draw it
+    private boolean mProjectedAhead;
+    private PointColumns mPlannedPoints;
+    private int mPlannedFirst;
+
+    public LinearSeries() {
+        super();
+        // Round caps cover up the possible gaps between consecutive segments
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    // A series which keeps only the last capacity points, e.g. for a chart of live readings
+    public LinearSeries(int capacity) {
+        super(capacity);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    LinearSeries(SeriesStore store) {
+        super(store);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    // Changing the decimation redraws the chart, like changing the line style. It waits for any drawing of the series
+    // to finish, so that a frame is projected with one mode throughout.
+    public synchronized void setDecimation(Decimation decimation) {
+        if (decimation == mDecimation) return;
+        mDecimation = decimation;
+        onStyleChanged();
+    }
+
+    public Decimation getDecimation() {
+        return mDecimation;
+    }
+
+    @Override
+    protected void drawRange(Canvas canvas, int first, int last, float scaleX, float scaleY, Rect gridBounds) {
+        final boolean projected = isProjectionCached(scaleX, scaleY, gridBounds);
+        if (!projected) {
+            project(first, last, scaleX, scaleY, gridBounds);
+            setProjectionCached(scaleX, scaleY, gridBounds);
+        }
+
+        // A projection made ahead for this frame by ParallelProjector isn't a reuse of the last frame's
+        final boolean cached = projected && !mProjectedAhead;
+        mProjectedAhead = false;
+
+        final int lineCount = mProjector.getLineCount();
+        if (lineCount > 0) {
+            canvas.drawLines(mProjector.getLines(), 0, lineCount, mPaint);
+            reportDrawn(lineCount / 4 + 1, 1, cached);
+        } else if (mProjector.hasDot()) {
+            canvas.drawCircle(mProjector.getDotX(), mProjector.getDotY(), mPaint.getStrokeWidth() / 2, mPaint);
+            reportDrawn(1, 1, cached);
+        } else {
+            reportDrawn(0, 0, cached);
+        }
+    }
+
+    // Whether mProjector already holds the projection for this frame: the data version says which points there are, and
+    // the grid bounds, scales and origin say which of them are visible and where they go.
+    private boolean isProjectionCached(float scaleX, float scaleY, Rect gridBounds) {
+        return mCachedVersion == getVersion()
+                && mCachedGridBounds.left == gridBounds.left && mCachedGridBounds.top == gridBounds.top
+                && mCachedGridBounds.right == gridBounds.right && mCachedGridBounds.bottom == gridBounds.bottom
+                && mCachedScaleX == scaleX && mCachedScaleY == scaleY
+                && mCachedOriginX == getOriginX() && mCachedOriginY == getOriginY()
+                && mCachedDecimation == mDecimation;
+    }
+
+    private void setProjectionCached(float scaleX, float scaleY, Rect gridBounds) {
+        mCachedVersion = getVersion();
+        mCachedGridBounds.set(gridBounds);
+        mCachedScaleX = scaleX;
+        mCachedScaleY = scaleY;
+        mCachedOriginX = getOriginX();
+        mCachedOriginY = getOriginY();
+        mCachedDecimation = mDecimation;
+    }
+
+    private void project(int first, int last, float scaleX, float scaleY, Rect gridBounds) {
+        final PointColumns points = decimate(first, last, scaleX, gridBounds.width());
+        if (points != getStore()) {
+            first = 0;
+            last = points.size() - 1;
+        }
+        projectLines(points, first, last, scaleX, scaleY, gridBounds);
+    }
+
+    // The points to project for stored points first to last: the store itself, or if decimating, the decimator holding
+    // all the points it's kept
+    private PointColumns decimate(int first, int last, float scaleX, int width) {
+        // Decimating only pays off once there are several points to every pixel column
+        if (mDecimation == Decimation.NONE || last - first + 1 <= 4 * width)
+            return getStore();
+
+        // When zoomed right out, start from the pyramid's per-bucket extremes rather than every point
+        PointColumns points = getStore();
+        final double pointsPerColumn = (double) (last - first + 1) / width;
+        if (PointPyramid.isUseful(pointsPerColumn)) {
+            final PointPyramid pyramid = getStore().getPyramid();
+            if (pyramid != null && pyramid.collect(getStore(), first, last, pointsPerColumn)) {
+                points = pyramid;
+                first = 0;
+                last = pyramid.size() - 1;
+            }
+        }
+
+        if (mDecimation == Decimation.MIN_MAX)
+            mDecimator.minMax(points, first, last, getOriginX(), scaleX);
+        else
+            mDecimator.largestTriangleThreeBuckets(points, first, last, 2 * width);
+        return mDecimator;
+    }
+
+    // Project the points from first to last into line segments, ready to be drawn with one Canvas call
+    private void projectLines(PointColumns points, int first, int last, float scaleX, float scaleY, Rect gridBounds) {
+        mProjector.project(points, first, last, gridBounds.left, gridBounds.bottom, getOriginX(), getOriginY(), scaleX, scaleY);
+    }
+
+    // Called by ParallelProjector on one of its threads, with the series locked by the projector's own thread. Unless
+    // the last projection still holds, do everything project() would for this frame except fill in the segments, and
+    // return how many there are for projectRun to fill in; the result is then taken as cached by drawRange.
+    int planProjection(Rect gridBounds, RectD valueBounds, float scaleX, float scaleY) {
+        setFrame(valueBounds);
+        mProjectedAhead = false;
+        if (isProjectionCached(scaleX, scaleY, gridBounds)) return 0;
+
+        int first = getFirstVisible(valueBounds);
+        int last = getLastVisible(valueBounds);
+        final PointColumns points = decimate(first, last, scaleX, gridBounds.width());
+        if (points != getStore()) {
+            first = 0;
+            last = points.size() - 1;
+        }
+
+        mPlannedPoints = points;
+        mPlannedFirst = first;
+        setProjectionCached(scaleX, scaleY, gridBounds);
+        mProjectedAhead = true;
+        return mProjector.begin(points, first, last, gridBounds.left, gridBounds.bottom, getOriginX(), getOriginY(),
+                scaleX, scaleY);
+    }
+
+    // Fill in segments from to to (exclusive) of the planned projection. Runs of segments may be filled in on different
+    // threads at once; each point is projected on its own, so the result is the same as projecting them all in one go.
+    void projectRun(int from, int to, Rect gridBounds, float scaleX, float scaleY) {
+        LineProjector.projectSegments(mPlannedPoints, mPlannedFirst + from, mPlannedFirst + to, gridBounds.left,
+                gridBounds.bottom, getOriginX(), getOriginY(), scaleX, scaleY, mProjector.getLines(), 4 * from);
+    }
 
     @Override
     public void drawPoint(Canvas canvas, AbstractPoint point, float scaleX, float scaleY, Rect gridBounds) {
-        final float x = (float) (gridBounds.left + (scaleX * (point.getX() - getMinX())));
-        final float y = (float) (gridBounds.bottom - (scaleY * (point.getY() - getMinY())));
+        final float x = LineProjector.projectX(point.getX(), gridBounds.left, getOriginX(), scaleX);
+        final float y = LineProjector.projectY(point.getY(), gridBounds.bottom, getOriginY(), scaleY);
 
-        if (mLastPoint != null)
+        if (mHasLastPoint)
             canvas.drawLine(mLastPoint.x, mLastPoint.y, x, y, mPaint);
-        else
-            mLastPoint = new PointF();
 
 		// This covers up the possible gaps between different lines
 		canvas.drawCircle(x, y, (mPaint.getStrokeWidth()/2) - 0.2F, mPaint);
 
         mLastPoint.set(x, y);
+        mHasLastPoint = true;
     }
 
     @Override
     protected void onDrawingComplete() {
-        mLastPoint = null;
+        mHasLastPoint = false;
     }
 
     public static class LinearPoint extends AbstractPoint {
@@ -37,4 +212,4 @@ public class LinearSeries extends AbstractSeries {
             super(x, y);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package com.fima.chartview;
+
+import java.io.File;
+import java.io.IOException;
+
+// A LinearSeries whose points are read straight from a file written by write(), memory-mapped rather than loaded onto
+// the heap. The OS pages points in as they're drawn, so a series can hold tens of millions of points, and drawing a
+// window of them only reads the part of the file covering that window. The file's header holds the range, so opening
+// it doesn't read the points either.
+//
+// A mapped series can't be changed: adding, removing or posting points throws UnsupportedOperationException. The file
+// shouldn't be changed while it's mapped, either. The pyramid used by decimation isn't available, since building it
+// would read the whole file, so decimating a zoomed-out view reads every point in it.
+public class MappedSeries extends LinearSeries {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public MappedSeries(File file) throws IOException {
+		super(new MappedPointStore(file));
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Write length points from the xs and ys arrays, starting at offset, to a file which can be opened as a MappedSeries.
+	// The x-values must be strictly increasing.
+	public static void write(File file, final double[] xs, final double[] ys, final int offset, final int length)
+			throws IOException {
+		if (offset < 0 || length < 0 || offset + length > xs.length || offset + length > ys.length)
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+
+		PointFile.write(file, new PointColumns() {
+			@Override
+			public int size() {
+				return length;
+			}
+
+			@Override
+			public double getX(int index) {
+				return xs[offset + index];
+			}
+
+			@Override
+			public double getY(int index) {
+				return ys[offset + index];
+			}
+		}, 0, length);
+	}
+
+	// Write every point in a series to a file which can be opened as a MappedSeries
+	public static void write(File file, AbstractSeries series) throws IOException {
+		series.writeSnapshot(file);
+	}
+
+	@Override
+	public void postPoint(double x, double y) {
+		throw new UnsupportedOperationException("A mapped series can't be changed");
+	}
+
+	@Override
+	public void postPoints(double[] xs, double[] ys, int offset, int length) {
+		throw new UnsupportedOperationException("A mapped series can't be changed");
+	}
+}
@@ -0,0 +1,244 @@
+package com.fima.chartview;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Rect;
+
+// Projects the LinearSeries of a frame on several threads before they're drawn, so that drawing just submits the
+// projected lines. There are two stages, each shared out between the worker threads and the calling thread:
+// first each series is planned (its visible points found and decimated, and its segment buffer sized), then the
+// segments of every series are filled in, in runs of RUN_SIZE. Every segment is projected from its own two points,
+// into its own place in the buffer, so the result is exactly what projecting serially gives, however the runs are
+// shared out.
+//
+// The calling thread holds every series' lock throughout, so that no points change while the workers read them. The
+// workers are threads of the projector's own, started and stopped by signalling them through mStageLock, so that
+// projecting a frame doesn't allocate anything (which handing tasks to an executor would).
+//
+// There's one projector for the whole process, shared by every chart: it projects one frame at a time, and the
+// frames of other charts wait their turn, since the workers already keep every core busy.
+final class ParallelProjector {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Segments projected by one task; big enough to outweigh handing out the task
+	private static final int RUN_SIZE = 16384;
+
+	private static ParallelProjector sInstance;
+
+	private final Thread[] mWorkers;
+
+	// The frame being projected
+	private List<AbstractSeries> mSeries;
+	private Rect mGridBounds;
+	private RectD mValueBounds;
+	private float mScaleX;
+	private float mScaleY;
+
+	// Per series: the number of segments planned, and the index of its first run
+	private int[] mSegments = new int[0];
+	private int[] mFirstRuns = new int[0];
+	private int mRunCount;
+
+	// Work is handed out by taking the next index
+	private final AtomicInteger mNextIndex = new AtomicInteger();
+	private boolean mPlanning;
+	private volatile Throwable mFailure;
+
+	// Workers wait on mStageLock for mStage to change, then those numbered below mStageWorkers join in. The calling
+	// thread waits for mWorkersBusy to get back down to 0.
+	private final Object mStageLock = new Object();
+	private int mStage;
+	private int mStageWorkers;
+	private int mWorkersBusy;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Use one worker thread for each core besides the calling thread's
+	private ParallelProjector() {
+		mWorkers = new Thread[Math.max(Runtime.getRuntime().availableProcessors() - 1, 0)];
+		for (int i = 0; i < mWorkers.length; i++) {
+			mWorkers[i] = new Thread(new Worker(i), "ChartView projector " + (i + 1));
+			mWorkers[i].setDaemon(true);
+			mWorkers[i].start();
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// The process' projector, whose workers are started the first time it's needed. They're daemon threads, idle
+	// between frames, so it's never shut down.
+	static synchronized ParallelProjector getInstance() {
+		if (sInstance == null) sInstance = new ParallelProjector();
+		return sInstance;
+	}
+
+	// Project every LinearSeries in the list for a frame with these bounds and scales. Series which aren't LinearSeries
+	// are left to project themselves as they draw. Frames are projected one at a time, whichever chart they're from.
+	synchronized void project(List<AbstractSeries> series, Rect gridBounds, RectD valueBounds, float scaleX, float scaleY) {
+		mSeries = series;
+		mGridBounds = gridBounds;
+		mValueBounds = valueBounds;
+		mScaleX = scaleX;
+		mScaleY = scaleY;
+		try {
+			lockAndProject(0);
+		} finally {
+			mSeries = null;
+			mGridBounds = null;
+			mValueBounds = null;
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Take each series' lock in list order, then project them all
+	private void lockAndProject(int index) {
+		if (index < mSeries.size()) {
+			synchronized (mSeries.get(index)) {
+				lockAndProject(index + 1);
+			}
+			return;
+		}
+
+		final int count = mSeries.size();
+		if (mSegments.length < count) {
+			mSegments = new int[count];
+			mFirstRuns = new int[count];
+		}
+
+		mPlanning = true;
+		runStage();
+
+		// Number the runs of every series' segments
+		mRunCount = 0;
+		for (int i = 0; i < count; i++) {
+			mFirstRuns[i] = mRunCount;
+			mRunCount += (mSegments[i] + RUN_SIZE - 1) / RUN_SIZE;
+		}
+
+		mPlanning = false;
+		runStage();
+	}
+
+	// Share out the current stage between the workers and this thread, and wait for it to finish
+	private void runStage() {
+		mNextIndex.set(0);
+		mFailure = null;
+
+		// Only wake workers if there's more than one piece of work
+		final int pieces = mPlanning ? mSeries.size() : mRunCount;
+		final int workers = Math.min(mWorkers.length, pieces - 1);
+		synchronized (mStageLock) {
+			if (workers > 0) {
+				mStageWorkers = workers;
+				mWorkersBusy = workers;
+				mStage++;
+				mStageLock.notifyAll();
+			}
+		}
+
+		work();
+
+		// The workers read the series this thread has locked, so wait for them even if interrupted
+		boolean interrupted = false;
+		synchronized (mStageLock) {
+			while (mWorkersBusy > 0) {
+				try {
+					mStageLock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+
+		final Throwable failure = mFailure;
+		if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+		if (failure instanceof Error) throw (Error) failure;
+	}
+
+	// Take pieces of the current stage until there are none left
+	private void work() {
+		try {
+			if (mPlanning) {
+				for (int i = mNextIndex.getAndIncrement(); i < mSeries.size(); i = mNextIndex.getAndIncrement())
+					plan(i);
+			} else {
+				for (int i = mNextIndex.getAndIncrement(); i < mRunCount; i = mNextIndex.getAndIncrement())
+					projectRun(i);
+			}
+		} catch (Throwable t) {
+			mFailure = t;
+			// Stop everyone else taking more work
+			mNextIndex.set(Integer.MAX_VALUE / 2);
+		}
+	}
+
+	private void plan(int index) {
+		final AbstractSeries series = mSeries.get(index);
+		mSegments[index] = series instanceof LinearSeries
+				? ((LinearSeries) series).planProjection(mGridBounds, mValueBounds, mScaleX, mScaleY) : 0;
+	}
+
+	private void projectRun(int run) {
+		// The run belongs to the last series whose runs start at or before it (series without any runs share their
+		// first run number with the next series, so are never picked)
+		int low = 0;
+		int high = mSeries.size() - 1;
+		while (low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if (mFirstRuns[mid] <= run) low = mid;
+			else high = mid - 1;
+		}
+
+		final int from = (run - mFirstRuns[low]) * RUN_SIZE;
+		final int to = Math.min(from + RUN_SIZE, mSegments[low]);
+		((LinearSeries) mSeries.get(low)).projectRun(from, to, mGridBounds, mScaleX, mScaleY);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Waits for each stage, and joins in if it's one of the workers the stage needs
+	private final class Worker implements Runnable {
+		private final int mIndex;
+
+		Worker(int index) {
+			mIndex = index;
+		}
+
+		@Override
+		public void run() {
+			int stage = 0;
+			while (true) {
+				synchronized (mStageLock) {
+					while (mStage == stage) {
+						try {
+							mStageLock.wait();
+						} catch (InterruptedException e) {
+							// Workers run for as long as the process does
+						}
+					}
+					stage = mStage;
+					if (mIndex >= mStageWorkers) continue;
+				}
+
+				work();
+
+				synchronized (mStageLock) {
+					if (--mWorkersBusy == 0) mStageLock.notifyAll();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package com.fima.chartview;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.os.Handler;
+import android.os.Looper;
+
+// Loads points into a series from a stream, on a background thread. Points are read in chunks, and each chunk is added
+// to the series in one go (see AbstractSeries.addPoints), so a chart showing the series redraws as the points arrive
+// rather than once they've all been read. Points should be in x order, as for any series, to be added in O(1).
+//
+// Two formats are understood:
+// * CSV: one point per line, with the x and y values in the columns given by setColumns (default: 0 and 1), separated by
+//   the delimiter (default: ','). Lines which don't have a number in both columns, such as a header, are skipped.
+// * BINARY: pairs of doubles, x then y, in the byte order given by setByteOrder (default: little-endian)
+//
+// The listener is told about progress, and then that loading finished or failed, on the UI thread. Loading fails if the
+// stream can't be read, or if the series throws while a chunk is added; either way, the loader's thread carries on. Once cancel() has
+// been called (on the UI thread), it's told nothing more. The loader closes the stream when it's done with it.
+public class SeriesLoader {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+	private final AbstractSeries mSeries;
+
+	private Format mFormat = Format.CSV;
+	private int mChunkSize = DEFAULT_CHUNK_SIZE;
+	private int mXColumn = 0;
+	private int mYColumn = 1;
+	private char mDelimiter = ',';
+	private ByteOrder mByteOrder = ByteOrder.LITTLE_ENDIAN;
+
+	private OnLoadListener mListener;
+	private ExecutorService mExecutor;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	private boolean mStarted;
+	private volatile boolean mCancelled;
+	private volatile long mPointsLoaded;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// The series must be one that points can be added to, so not a MappedSeries
+	public SeriesLoader(AbstractSeries series) {
+		if (series instanceof MappedSeries) throw new IllegalArgumentException("A mapped series can't be changed");
+		mSeries = series;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public void setFormat(Format format) {
+		mFormat = format;
+	}
+
+	public Format getFormat() {
+		return mFormat;
+	}
+
+	// Number of points read before they're added to the series (default: 8192)
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		mChunkSize = chunkSize;
+	}
+
+	public int getChunkSize() {
+		return mChunkSize;
+	}
+
+	// The CSV columns (counting from 0) holding x and y values
+	public void setColumns(int xColumn, int yColumn) {
+		if (xColumn < 0 || yColumn < 0) throw new IllegalArgumentException("Columns must not be negative");
+		mXColumn = xColumn;
+		mYColumn = yColumn;
+	}
+
+	public void setDelimiter(char delimiter) {
+		mDelimiter = delimiter;
+	}
+
+	public void setByteOrder(ByteOrder byteOrder) {
+		mByteOrder = byteOrder;
+	}
+
+	public void setOnLoadListener(OnLoadListener listener) {
+		mListener = listener;
+	}
+
+	// Load on this executor rather than a thread of the loader's own
+	public void setExecutor(ExecutorService executor) {
+		mExecutor = executor;
+	}
+
+	// Start loading points from the stream. A loader can only be started once.
+	public void start(final InputStream in) {
+		if (mStarted) throw new IllegalStateException("Loader already started");
+		mStarted = true;
+
+		final ExecutorService executor = mExecutor != null ? mExecutor : Executors.newSingleThreadExecutor();
+		final boolean ownExecutor = mExecutor == null;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					load(in);
+				} finally {
+					if (ownExecutor) executor.shutdown();
+				}
+			}
+		});
+	}
+
+	// Stop loading. Points already added to the series stay there.
+	public void cancel() {
+		mCancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+
+	// Number of points read so far (including any the series ignored, e.g. for repeating an x-value)
+	public long getPointsLoaded() {
+		return mPointsLoaded;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void load(InputStream in) {
+		try {
+			if (mFormat == Format.CSV) loadCsv(in);
+			else loadBinary(in);
+
+			if (!mCancelled) postFinished();
+		} catch (IOException e) {
+			if (!mCancelled) postFailed(e);
+		} catch (RuntimeException e) {
+			// Thrown by the series as a chunk was added. Left uncaught, it would kill the thread (and on Android, the
+			// process) without the listener hearing about it.
+			if (!mCancelled) postFailed(e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// Nothing more to read anyway
+			}
+		}
+	}
+
+	private void loadCsv(InputStream in) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		final double[] xs = new double[mChunkSize];
+		final double[] ys = new double[mChunkSize];
+		final int lastColumn = Math.max(mXColumn, mYColumn);
+
+		int count = 0;
+		String line;
+		while (!mCancelled && (line = reader.readLine()) != null) {
+			// Find the x and y fields without splitting the whole line
+			int start = 0;
+			String x = null;
+			String y = null;
+			for (int column = 0; column <= lastColumn && start >= 0; column++) {
+				final int end = line.indexOf(mDelimiter, start);
+				if (column == mXColumn) x = field(line, start, end);
+				if (column == mYColumn) y = field(line, start, end);
+				start = end < 0 ? -1 : end + 1;
+			}
+			if (x == null || y == null) continue;
+
+			try {
+				xs[count] = Double.parseDouble(x);
+				ys[count] = Double.parseDouble(y);
+			} catch (NumberFormatException e) {
+				continue;
+			}
+
+			if (++count == mChunkSize) {
+				addChunk(xs, ys, count);
+				count = 0;
+			}
+		}
+		if (count > 0 && !mCancelled) addChunk(xs, ys, count);
+	}
+
+	private static String field(String line, int start, int end) {
+		return line.substring(start, end < 0 ? line.length() : end).trim();
+	}
+
+	private void loadBinary(InputStream in) throws IOException {
+		final ReadableByteChannel channel = Channels.newChannel(in);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(mChunkSize * 16).order(mByteOrder);
+		final double[] pairs = new double[mChunkSize * 2];
+		final double[] xs = new double[mChunkSize];
+		final double[] ys = new double[mChunkSize];
+
+		boolean ended = false;
+		while (!ended && !mCancelled) {
+			// Fill the buffer, or as much of it as there is left
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					ended = true;
+					break;
+				}
+			}
+
+			buffer.flip();
+			final int count = buffer.remaining() / 16;
+			buffer.asDoubleBuffer().get(pairs, 0, count * 2);
+			for (int i = 0; i < count; i++) {
+				xs[i] = pairs[2 * i];
+				ys[i] = pairs[2 * i + 1];
+			}
+			if (count > 0 && !mCancelled) addChunk(xs, ys, count);
+
+			// Keep any part of a point for the next chunk
+			buffer.position(count * 16);
+			if (ended && buffer.hasRemaining()) throw new EOFException("Input ends part way through a point");
+			buffer.compact();
+		}
+	}
+
+	private void addChunk(double[] xs, double[] ys, int count) {
+		mSeries.addPoints(xs, ys, 0, count);
+		mPointsLoaded += count;
+		postProgress(mPointsLoaded);
+	}
+
+	/****
+	 * Listener calls, delivered on the UI thread unless cancelled by then
+	 */
+
+	private void postProgress(final long pointsLoaded) {
+		if (mListener == null) return;
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				final OnLoadListener listener = mListener;
+				if (!mCancelled && listener != null) listener.onLoadProgress(SeriesLoader.this, pointsLoaded);
+			}
+		});
+	}
+
+	private void postFinished() {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				final OnLoadListener listener = mListener;
+				if (!mCancelled && listener != null) listener.onLoadFinished(SeriesLoader.this, mPointsLoaded);
+			}
+		});
+	}
+
+	private void postFailed(final Throwable e) {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				final OnLoadListener listener = mListener;
+				if (!mCancelled && listener != null) listener.onLoadFailed(SeriesLoader.this, e);
+			}
+		});
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public enum Format {
+		CSV,
+		BINARY
+	}
+
+	public interface OnLoadListener {
+		// Another chunk of points has been added to the series, making pointsLoaded in all
+		void onLoadProgress(SeriesLoader loader, long pointsLoaded);
+
+		// Every point in the stream has been added
+		void onLoadFinished(SeriesLoader loader, long pointsLoaded);
+
+		// Reading the stream (an IOException) or adding points to the series (a RuntimeException) failed. Points added
+		// before the failure stay in the series.
+		void onLoadFailed(SeriesLoader loader, Throwable e);
+	}
+}
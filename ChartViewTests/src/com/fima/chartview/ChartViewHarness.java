@@ -0,0 +1,179 @@
+package com.fima.chartview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import android.content.Context;
+import android.view.View.MeasureSpec;
+
+// Lays out and draws a ChartView of synthetic series onto a RecordingCanvas, without a window or a screen, and reports
+// what each frame drew and how long it took. The tests run it on a plain JVM under Robolectric (see ChartViewHarnessTest),
+// so that changes to the drawing code can be measured without a device.
+//
+// Each frame calls the chart's onDraw, so what's recorded is the chart's own drawing (grid, canvas labels and series)
+// and not its label views' (Robolectric's View.draw doesn't call onDraw at all). The chart is drawn in the foreground.
+// With the grid cached (the default), redrawing the grid layer goes to the layer's own Canvas and only copying it is
+// recorded; call getChartView().setCacheGrid(false) to record the grid too.
+public class ChartViewHarness {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final ChartView mChartView;
+	private final int mWidth;
+	private final int mHeight;
+
+	private final RecordingCanvas mCanvas = new RecordingCanvas();
+
+	private final List<AbstractSeries> mSeries = new ArrayList<AbstractSeries>();
+	private final Random mRandom = new Random(0);
+	private double mNextX;
+
+	private int mPointsPerFrame;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public ChartViewHarness(Context context, int width, int height) {
+		mChartView = new ChartView(context);
+		mWidth = width;
+		mHeight = height;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// The chart being drawn, to change its settings or add label adapters
+	public ChartView getChartView() {
+		return mChartView;
+	}
+
+	// Add a series of pointCount points: a sine wave with some noise, the same every time. It's created with a capacity
+	// of pointCount, so if points are added each frame it scrolls like live data.
+	public LinearSeries addSeries(int pointCount) {
+		final double[] xs = new double[pointCount];
+		final double[] ys = new double[pointCount];
+		for (int i = 0; i < pointCount; i++) {
+			xs[i] = i;
+			ys[i] = nextY(i);
+		}
+		mNextX = Math.max(mNextX, pointCount);
+
+		final LinearSeries series = new LinearSeries(pointCount);
+		series.setPoints(xs, ys);
+		mSeries.add(series);
+		mChartView.addSeries(series);
+		return series;
+	}
+
+	// Number of points added to every series before each frame (default: 0, so frames redraw the same data)
+	public void setPointsPerFrame(int pointsPerFrame) {
+		mPointsPerFrame = pointsPerFrame;
+	}
+
+	public int getPointsPerFrame() {
+		return mPointsPerFrame;
+	}
+
+	// Lay out the chart, then draw it frames times
+	public Report run(int frames) {
+		mChartView.measure(MeasureSpec.makeMeasureSpec(mWidth, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(mHeight, MeasureSpec.EXACTLY));
+		mChartView.layout(0, 0, mWidth, mHeight);
+
+		final Report report = new Report(frames);
+		for (int frame = 0; frame < frames; frame++) {
+			addFramePoints();
+
+			mCanvas.reset();
+			final long start = System.nanoTime();
+			mChartView.onDraw(mCanvas);
+			final long end = System.nanoTime();
+
+			report.mOperations[frame] = mCanvas.getOperationCount();
+			report.mVertices[frame] = mCanvas.getVertexCount();
+			report.mFrameNanos[frame] = end - start;
+		}
+		return report;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private double nextY(double x) {
+		return Math.sin(x / 100) + (mRandom.nextDouble() - 0.5) / 10;
+	}
+
+	private void addFramePoints() {
+		if (mPointsPerFrame <= 0) return;
+
+		for (int i = 0; i < mPointsPerFrame; i++) {
+			final double x = mNextX++;
+			final int size = mSeries.size();
+			for (int j = 0; j < size; j++)
+				mSeries.get(j).addPoint(x, nextY(x));
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// What each frame of a run drew, and how long it took
+	public static class Report {
+		private final int[] mOperations;
+		private final long[] mVertices;
+		private final long[] mFrameNanos;
+
+		Report(int frames) {
+			mOperations = new int[frames];
+			mVertices = new long[frames];
+			mFrameNanos = new long[frames];
+		}
+
+		public int getFrameCount() {
+			return mFrameNanos.length;
+		}
+
+		// Number of Canvas draw calls in a frame
+		public int getOperations(int frame) {
+			return mOperations[frame];
+		}
+
+		// Number of vertices passed to the Canvas in a frame
+		public long getVertices(int frame) {
+			return mVertices[frame];
+		}
+
+		// Wall time taken to draw a frame, in nanoseconds
+		public long getFrameNanos(int frame) {
+			return mFrameNanos[frame];
+		}
+
+		// Mean wall time per frame, skipping the first skip frames (e.g. to leave out warm-up)
+		public double getMeanFrameNanos(int skip) {
+			final int frames = mFrameNanos.length - skip;
+			if (frames <= 0) return 0;
+
+			long total = 0;
+			for (int i = skip; i < mFrameNanos.length; i++)
+				total += mFrameNanos[i];
+			return (double) total / frames;
+		}
+
+		// One line per frame: frame number, operations, vertices and microseconds
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder("frame\toperations\tvertices\tmicros\n");
+			for (int i = 0; i < mFrameNanos.length; i++) {
+				builder.append(i).append('\t').append(mOperations[i]).append('\t').append(mVertices[i]).append('\t')
+						.append(mFrameNanos[i] / 1000).append('\n');
+			}
+			return builder.toString();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.fima.chartview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+// A Canvas which counts what's drawn on it: draw operations, and the vertices they pass (two per line segment, one per
+// point or circle, four per rectangle or bitmap). Created without a Bitmap it only counts, so it works without a
+// real rendering backend; created with one it also draws into it. Clipping, transforms and save/restore are passed
+// through as normal, and not counted.
+public class RecordingCanvas extends Canvas {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final boolean mDraw;
+
+	private int mOperations;
+	private long mVertices;
+	private int mTextOperations;
+	private int mBitmapOperations;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public RecordingCanvas() {
+		super();
+		mDraw = false;
+	}
+
+	public RecordingCanvas(Bitmap bitmap) {
+		super(bitmap);
+		mDraw = true;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Number of draw calls since the last reset
+	public int getOperationCount() {
+		return mOperations;
+	}
+
+	public long getVertexCount() {
+		return mVertices;
+	}
+
+	// Number of the draw calls which were for text, and for bitmaps
+	public int getTextOperationCount() {
+		return mTextOperations;
+	}
+
+	public int getBitmapOperationCount() {
+		return mBitmapOperations;
+	}
+
+	public void reset() {
+		mOperations = 0;
+		mVertices = 0;
+		mTextOperations = 0;
+		mBitmapOperations = 0;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// OVERRIDES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+		record(2);
+		if (mDraw) super.drawLine(startX, startY, stopX, stopY, paint);
+	}
+
+	@Override
+	public void drawLines(float[] pts, int offset, int count, Paint paint) {
+		record(count / 2);
+		if (mDraw) super.drawLines(pts, offset, count, paint);
+	}
+
+	@Override
+	public void drawLines(float[] pts, Paint paint) {
+		record(pts.length / 2);
+		if (mDraw) super.drawLines(pts, paint);
+	}
+
+	@Override
+	public void drawPoint(float x, float y, Paint paint) {
+		record(1);
+		if (mDraw) super.drawPoint(x, y, paint);
+	}
+
+	@Override
+	public void drawPoints(float[] pts, int offset, int count, Paint paint) {
+		record(count / 2);
+		if (mDraw) super.drawPoints(pts, offset, count, paint);
+	}
+
+	@Override
+	public void drawPoints(float[] pts, Paint paint) {
+		record(pts.length / 2);
+		if (mDraw) super.drawPoints(pts, paint);
+	}
+
+	@Override
+	public void drawCircle(float cx, float cy, float radius, Paint paint) {
+		record(1);
+		if (mDraw) super.drawCircle(cx, cy, radius, paint);
+	}
+
+	@Override
+	public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+		record(4);
+		if (mDraw) super.drawRect(left, top, right, bottom, paint);
+	}
+
+	@Override
+	public void drawRect(Rect r, Paint paint) {
+		record(4);
+		if (mDraw) super.drawRect(r, paint);
+	}
+
+	@Override
+	public void drawRect(RectF rect, Paint paint) {
+		record(4);
+		if (mDraw) super.drawRect(rect, paint);
+	}
+
+	// Paths aren't broken down, so count as an operation with no vertices
+	@Override
+	public void drawPath(Path path, Paint paint) {
+		record(0);
+		if (mDraw) super.drawPath(path, paint);
+	}
+
+	@Override
+	public void drawText(String text, float x, float y, Paint paint) {
+		recordText();
+		if (mDraw) super.drawText(text, x, y, paint);
+	}
+
+	@Override
+	public void drawText(String text, int start, int end, float x, float y, Paint paint) {
+		recordText();
+		if (mDraw) super.drawText(text, start, end, x, y, paint);
+	}
+
+	@Override
+	public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+		recordText();
+		if (mDraw) super.drawText(text, index, count, x, y, paint);
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+		recordBitmap();
+		if (mDraw) super.drawBitmap(bitmap, left, top, paint);
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+		recordBitmap();
+		if (mDraw) super.drawBitmap(bitmap, src, dst, paint);
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+		recordBitmap();
+		if (mDraw) super.drawBitmap(bitmap, src, dst, paint);
+	}
+
+	@Override
+	public void drawColor(int color) {
+		record(0);
+		if (mDraw) super.drawColor(color);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void record(int vertices) {
+		mOperations++;
+		mVertices += vertices;
+	}
+
+	private void recordText() {
+		mOperations++;
+		mTextOperations++;
+	}
+
+	private void recordBitmap() {
+		mOperations++;
+		mBitmapOperations++;
+		mVertices += 4;
+	}
+}
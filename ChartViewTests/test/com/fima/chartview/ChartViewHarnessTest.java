@@ -0,0 +1,93 @@
+package com.fima.chartview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+// Checks what the harness records for charts whose drawing is known exactly, and prints the report for a big one so
+// that runs can be compared
+@RunWith(RobolectricTestRunner.class)
+public class ChartViewHarnessTest {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int WIDTH = 1080;
+	private static final int HEIGHT = 720;
+
+	// The default grid: 5 lines, plus one at each end, each way
+	private static final int GRID_LINES = 14;
+
+	private ChartViewHarness mHarness;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// TESTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Before
+	public void setUp() {
+		mHarness = new ChartViewHarness(RuntimeEnvironment.application, WIDTH, HEIGHT);
+		mHarness.getChartView().setCacheGrid(false);
+	}
+
+	@Test
+	public void countsGridLinesAndSeriesSegments() {
+		mHarness.addSeries(1000);
+
+		final ChartViewHarness.Report report = mHarness.run(3);
+		for (int frame = 0; frame < report.getFrameCount(); frame++) {
+			// A drawLine per grid line, and one drawLines for the series' 999 segments
+			assertEquals(GRID_LINES + 1, report.getOperations(frame));
+			assertEquals(2 * GRID_LINES + 2 * 999, report.getVertices(frame));
+		}
+	}
+
+	@Test
+	public void copiesCachedGridLayer() {
+		mHarness.getChartView().setCacheGrid(true);
+		mHarness.addSeries(1000);
+
+		// The grid is drawn into its layer, so only copying the layer is recorded
+		final ChartViewHarness.Report report = mHarness.run(3);
+		for (int frame = 0; frame < report.getFrameCount(); frame++)
+			assertEquals(2, report.getOperations(frame));
+	}
+
+	@Test
+	public void decimationBoundsVerticesByWidth() {
+		mHarness.addSeries(1000000).setDecimation(LinearSeries.Decimation.MIN_MAX);
+
+		// However many points there are, a handful per pixel column are drawn
+		final ChartViewHarness.Report report = mHarness.run(3);
+		for (int frame = 0; frame < report.getFrameCount(); frame++)
+			assertTrue(report.getVertices(frame) - 2 * GRID_LINES <= 8 * WIDTH);
+	}
+
+	@Test
+	public void scrollsLiveData() {
+		mHarness.addSeries(10000);
+		mHarness.setPointsPerFrame(100);
+
+		// The series is full, so each point added evicts one, and every frame draws the same number of segments
+		final ChartViewHarness.Report report = mHarness.run(5);
+		for (int frame = 0; frame < report.getFrameCount(); frame++)
+			assertEquals(2 * GRID_LINES + 2 * 9999, report.getVertices(frame));
+	}
+
+	@Test
+	public void reportsLargeChart() {
+		mHarness.addSeries(100000);
+		mHarness.addSeries(100000).setDecimation(LinearSeries.Decimation.MIN_MAX);
+		mHarness.addSeries(100000).setDecimation(LinearSeries.Decimation.LTTB);
+		mHarness.setPointsPerFrame(10);
+
+		final ChartViewHarness.Report report = mHarness.run(20);
+		System.out.print(report);
+		System.out.println("mean micros, after 5 frames' warm-up: " + report.getMeanFrameNanos(5) / 1000);
+	}
+}
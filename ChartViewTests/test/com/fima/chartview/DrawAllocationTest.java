@@ -0,0 +1,164 @@
+package com.fima.chartview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+// Draws charts for many frames in a row and checks that, once warmed up, drawing a frame doesn't allocate anything
+@RunWith(RobolectricTestRunner.class)
+public class DrawAllocationTest {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int WIDTH = 1080;
+	private static final int HEIGHT = 720;
+
+	private static final int WARM_UP_FRAMES = 50;
+	private static final int FRAMES = 100;
+
+	// Anything else the JVM does on this thread (e.g. loading a class) is counted too, so a chart passes if any round
+	// of FRAMES frames allocates nothing
+	private static final int ROUNDS = 5;
+
+	private com.sun.management.ThreadMXBean mThreadBean;
+	private ChartViewHarness mHarness;
+	private final RecordingCanvas mCanvas = new RecordingCanvas();
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// TESTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Before
+	public void setUp() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		mThreadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(mThreadBean.isThreadAllocatedMemorySupported());
+		mThreadBean.setThreadAllocatedMemoryEnabled(true);
+
+		mHarness = new ChartViewHarness(RuntimeEnvironment.application, WIDTH, HEIGHT);
+	}
+
+	@Test
+	public void drawsSeriesWithoutAllocating() {
+		mHarness.addSeries(10000);
+		mHarness.addSeries(100000).setDecimation(LinearSeries.Decimation.MIN_MAX);
+		mHarness.addSeries(100000).setDecimation(LinearSeries.Decimation.LTTB);
+
+		assertDrawsWithoutAllocating();
+	}
+
+	@Test
+	public void drawsUncachedGridWithoutAllocating() {
+		mHarness.getChartView().setCacheGrid(false);
+		mHarness.addSeries(10000);
+
+		assertDrawsWithoutAllocating();
+	}
+
+	@Test
+	public void drawsFixedGapGridAndCanvasLabelsWithoutAllocating() {
+		final ChartView chart = mHarness.getChartView();
+		chart.setCacheGrid(false);
+		chart.setDrawLabelsOnCanvas(true);
+		chart.setGridFixedXGap(1000);
+		chart.setGridFixedYGap(1);
+		chart.setLeftLabelAdapter(new ValueLabelAdapter());
+		chart.setBottomLabelAdapter(new ValueLabelAdapter());
+		mHarness.addSeries(10000);
+
+		assertDrawsWithoutAllocating();
+	}
+
+	@Test
+	public void drawsLabelsAroundZeroWithoutAllocating() {
+		// Labels for x and -x, e.g. 1.0 and -1.0, must all stay cached together
+		final ChartView chart = mHarness.getChartView();
+		chart.setCacheGrid(false);
+		chart.setDrawLabelsOnCanvas(true);
+		chart.setGridFixedYGap(1);
+		chart.setLeftLabelAdapter(new ValueLabelAdapter());
+		chart.setRightLabelAdapter(new ValueLabelAdapter());
+		mHarness.addSeries(10000);
+		chart.setViewport(new RectD(0, -5, 10000, 5));
+
+		assertDrawsWithoutAllocating();
+	}
+
+	@Test
+	public void drawsViewportWithoutAllocating() {
+		mHarness.addSeries(100000).setDecimation(LinearSeries.Decimation.MIN_MAX);
+		mHarness.getChartView().setViewport(new RectD(20000, -1, 60000, 1));
+
+		assertDrawsWithoutAllocating();
+	}
+
+	@Test
+	public void projectsInParallelWithoutAllocating() {
+		mHarness.getChartView().setParallelProjection(true);
+		for (int i = 0; i < 4; i++)
+			mHarness.addSeries(100000);
+
+		assertDrawsWithoutAllocating();
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void assertDrawsWithoutAllocating() {
+		// Lay out the chart and draw its first frame, then let the drawing code settle
+		mHarness.run(1);
+		drawFrames(WARM_UP_FRAMES);
+
+		// Measuring allocates a little itself, so take off what measuring no frames at all allocates
+		final long overhead = allocatedBytes(0);
+		long fewest = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS && fewest > 0; round++)
+			fewest = Math.min(fewest, Math.max(allocatedBytes(FRAMES) - overhead, 0));
+
+		assertEquals("bytes allocated drawing " + FRAMES + " frames", 0, fewest);
+	}
+
+	private long allocatedBytes(int frames) {
+		final long threadId = Thread.currentThread().getId();
+		final long before = mThreadBean.getThreadAllocatedBytes(threadId);
+		drawFrames(frames);
+		return mThreadBean.getThreadAllocatedBytes(threadId) - before;
+	}
+
+	private void drawFrames(int frames) {
+		final ChartView chart = mHarness.getChartView();
+		for (int i = 0; i < frames; i++) {
+			mCanvas.reset();
+			chart.onDraw(mCanvas);
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static class ValueLabelAdapter extends LabelAdapter {
+		@Override
+		public String getLabel(double value) {
+			return String.valueOf(value);
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			return null;
+		}
+	}
+}